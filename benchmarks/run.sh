@@ -0,0 +1,11 @@
+#!/bin/sh
+# Builds the game and the benchmarks, runs all benchmarks and stores the results as JSON named after the current
+# commit, so that runs of different commits can be compared. Extra arguments are passed on to JMH, for example a
+# regular expression selecting the benchmarks to run.
+set -e
+cd "$(dirname "$0")"
+(cd .. && mvn -B -q install -DskipTests)
+mvn -B -q package
+mkdir -p results
+commit=$(git rev-parse --short HEAD)
+java -jar target/benchmarks.jar -rf json -rff "results/$commit.json" "$@"
@@ -0,0 +1,103 @@
+package net.zn80.trystansroguelike.benchmarks;
+
+import net.zn80.trystansroguelike.CaveSmoother;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the bit-packed {@link CaveSmoother} against a straightforward cell by cell implementation of the same rule.
+ * Before measuring, both are run on the same random map and must agree on every cell.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaveSmootherBenchmark {
+
+    private static final int PASSES = 8;
+
+    @Param({"90", "512", "4096"})
+    private int size;
+
+    private boolean[][] randomCells;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        randomCells = new boolean[size][size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                randomCells[x][y] = random.nextBoolean();
+            }
+        }
+
+        CaveSmoother smoother = bitPacked();
+        boolean[][] expected = reference();
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                if (smoother.isFloor(x, y) != expected[x][y]) {
+                    throw new IllegalStateException("Smoothers disagree at " + x + "/" + y);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public CaveSmoother bitPacked() {
+        CaveSmoother smoother = new CaveSmoother(size, size);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                smoother.setFloor(x, y, randomCells[x][y]);
+            }
+        }
+        return smoother.smooth(PASSES);
+    }
+
+    /**
+     * The reference implementation: counts the floors and walls around every cell, ignoring cells outside the map, and
+     * writes the result into a second array.
+     */
+    @Benchmark
+    public boolean[][] reference() {
+        boolean[][] cells = randomCells;
+        for (int pass = 0; pass < PASSES; pass++) {
+            boolean[][] smoothed = new boolean[size][size];
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    int floors = 0;
+                    int rocks = 0;
+                    for (int ox = -1; ox < 2; ox++) {
+                        for (int oy = -1; oy < 2; oy++) {
+                            if (x + ox < 0 || x + ox >= size || y + oy < 0 || y + oy >= size) {
+                                continue;
+                            }
+                            if (cells[x + ox][y + oy]) {
+                                floors++;
+                            } else {
+                                rocks++;
+                            }
+                        }
+                    }
+                    smoothed[x][y] = floors >= rocks;
+                }
+            }
+            cells = smoothed;
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,85 @@
+package net.zn80.trystansroguelike.benchmarks;
+
+import net.zn80.trystansroguelike.Creature;
+import net.zn80.trystansroguelike.CreatureFactory;
+import net.zn80.trystansroguelike.World;
+import net.zn80.trystansroguelike.WorldBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creature lookups and a full creature tick for a growing number of creatures. The map grows with the number
+ * of creatures, so that the density stays the same and only the creature count changes between runs. With the
+ * occupancy index a lookup costs the same for every creature count, and a tick costs the same per creature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreatureLookupBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    private int creatureCount;
+
+    private World world;
+    private int[] lookupX;
+    private int[] lookupY;
+
+    /**
+     * Builds a world with room for about sixteen cells per creature and fills it with fungi.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        int side = Math.max(90, (int) Math.ceil(Math.sqrt(creatureCount * 16.0)));
+        world = new WorldBuilder(side, side, 42).makeCaves().build();
+        CreatureFactory factory = new CreatureFactory(world);
+        for (int i = 0; i < creatureCount; i++) {
+            factory.newFungus();
+        }
+
+        // Look up the cells the creatures stand on, so that every lookup has to find a creature
+        Random random = new Random(42);
+        lookupX = new int[LOOKUPS];
+        lookupY = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            Creature creature = world.getCreatures().get(random.nextInt(world.getCreatures().size()));
+            lookupX[i] = creature.getX();
+            lookupY[i] = creature.getY();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getCreature(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(world.getCreature(lookupX[i], lookupY[i]));
+        }
+    }
+
+    /**
+     * A full tick of all creatures. Divide the score by the creature count to get the cost per creature.
+     */
+    @Benchmark
+    public void tick() {
+        world.updateCreatures();
+    }
+}
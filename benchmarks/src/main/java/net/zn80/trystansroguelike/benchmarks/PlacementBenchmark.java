@@ -0,0 +1,53 @@
+package net.zn80.trystansroguelike.benchmarks;
+
+import net.zn80.trystansroguelike.Creature;
+import net.zn80.trystansroguelike.CreatureFactory;
+import net.zn80.trystansroguelike.World;
+import net.zn80.trystansroguelike.WorldBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link World#addAtEmptyLocation(Creature)} at several creature densities. The density is the share of the
+ * ground cells that is occupied. Every added creature is removed again right away, so the density stays the same for
+ * the whole run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlacementBenchmark {
+
+    @Param({"0.01", "0.1", "0.5", "0.9", "0.99"})
+    private double density;
+
+    private World world;
+    private CreatureFactory factory;
+
+    @Setup
+    public void setUp() {
+        world = new WorldBuilder(512, 512, 42).makeCaves().build();
+        factory = new CreatureFactory(world);
+        factory.newFungi((int) (world.getEmptyCellCount() * density));
+    }
+
+    @Benchmark
+    public Creature addAtEmptyLocation() {
+        Creature fungus = factory.newFungus();
+        world.remove(fungus);
+        return fungus;
+    }
+}
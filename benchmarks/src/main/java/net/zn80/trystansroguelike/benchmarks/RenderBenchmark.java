@@ -0,0 +1,70 @@
+package net.zn80.trystansroguelike.benchmarks;
+
+import net.trystan.asciipanel.AsciiPanel;
+import net.zn80.trystansroguelike.Simulation;
+import net.zn80.trystansroguelike.screens.AsciiPanelTarget;
+import net.zn80.trystansroguelike.screens.MemoryRenderTarget;
+import net.zn80.trystansroguelike.screens.PlayScreen;
+import net.zn80.trystansroguelike.screens.RenderTarget;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PlayScreen#displayOutput(RenderTarget)}, either into an AsciiPanel that is never shown or into a
+ * {@link MemoryRenderTarget}, so the benchmark runs on a headless machine. The screen only redraws cells that changed,
+ * so a full redraw and an unchanged frame are measured separately.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+    @Param({"8", "500"})
+    private int fungi;
+
+    @Param({"asciipanel", "memory"})
+    private String target;
+
+    private RenderTarget terminal;
+    private PlayScreen screen;
+
+    @Setup
+    public void setUp() {
+        terminal = target.equals("memory") ? new MemoryRenderTarget() : new AsciiPanelTarget(new AsciiPanel());
+        screen = new PlayScreen(Simulation.create(42, 200, 100, fungi));
+    }
+
+    /**
+     * Draws the whole screen, as after switching screens or scrolling.
+     */
+    @Benchmark
+    public RenderTarget fullRedraw() {
+        terminal.clear();
+        screen.invalidate();
+        screen.displayOutput(terminal);
+        return terminal;
+    }
+
+    /**
+     * Draws a frame in which nothing changed, which only costs the bookkeeping of the dirty cells.
+     */
+    @Benchmark
+    public RenderTarget unchangedFrame() {
+        screen.displayOutput(terminal);
+        return terminal;
+    }
+}
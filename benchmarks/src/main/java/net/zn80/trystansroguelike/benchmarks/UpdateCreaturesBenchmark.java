@@ -0,0 +1,60 @@
+package net.zn80.trystansroguelike.benchmarks;
+
+import net.zn80.trystansroguelike.CreatureFactory;
+import net.zn80.trystansroguelike.World;
+import net.zn80.trystansroguelike.WorldBuilder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link World#updateCreatures()} while fungus colonies grow. Every iteration starts from the same seeded world
+ * with the given number of fungi, which then spread for as many ticks as fit into the iteration. The creature count at
+ * the end of the iteration is reported next to the score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateCreaturesBenchmark {
+
+    @Param({"8", "1000", "10000"})
+    private int initialFungi;
+
+    private World world;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        world = new WorldBuilder(512, 512, 42).makeCaves().build();
+        new CreatureFactory(world).newFungi(initialFungi);
+    }
+
+    @Benchmark
+    public void updateCreatures(Population population) {
+        world.updateCreatures();
+        population.creatures = world.getCreatures().size();
+    }
+
+    /**
+     * Reports the number of creatures alongside the timing.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Population {
+        public int creatures;
+    }
+}
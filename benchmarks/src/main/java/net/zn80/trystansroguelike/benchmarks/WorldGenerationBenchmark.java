@@ -0,0 +1,48 @@
+package net.zn80.trystansroguelike.benchmarks;
+
+import net.zn80.trystansroguelike.World;
+import net.zn80.trystansroguelike.WorldBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link WorldBuilder#makeCaves()} and building the world for several map sizes, from the size the game uses
+ * up to 4k x 4k.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldGenerationBenchmark {
+
+    @Param({"90x31", "512x512", "2048x2048", "4096x4096"})
+    private String size;
+
+    private int width;
+    private int height;
+
+    @Setup
+    public void setUp() {
+        String[] parts = size.split("x");
+        width = Integer.parseInt(parts[0]);
+        height = Integer.parseInt(parts[1]);
+    }
+
+    @Benchmark
+    public World makeCaves() {
+        return new WorldBuilder(width, height, 42).makeCaves().build();
+    }
+}
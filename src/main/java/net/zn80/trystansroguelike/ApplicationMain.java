@@ -5,56 +5,62 @@
 package net.zn80.trystansroguelike;
 
 import net.trystan.asciipanel.AsciiPanel;
-import net.zn80.trystansroguelike.screens.Screen;
 import net.zn80.trystansroguelike.screens.StartScreen;
 
 import javax.swing.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 
 public class ApplicationMain extends JFrame implements KeyListener {
 
     AsciiPanel terminal;
-    private Screen screen;
+    private final GameLoop loop;
 
     /**
      * Creates a new instance of the ApplicationMain class, which extends JFrame and represents the game window. The
      * constructor initializes the window with an AsciiPanel, adds it to the frame, packs the window, initializes the
-     * first screen of the game as the StartScreen, adds a key listener to the frame, and repaints the window to ensure
-     * everything is displayed correctly.
+     * first screen of the game as the StartScreen, adds a key listener to the frame, and starts the game loop, which
+     * runs the screens on its own thread, see {@link GameLoop}.
      */
     public ApplicationMain() {
+        this(null);
+    }
+
+    /**
+     * Creates the game window like {@link #ApplicationMain()}, but the game starts from the given snapshot instead of a
+     * newly generated world.
+     *
+     * @param snapshot the snapshot to load, or null to generate a world
+     */
+    public ApplicationMain(Path snapshot) {
         super();
-        terminal = new AsciiPanel();
+        loop = new GameLoop(new StartScreen(snapshot));
+        terminal = loop.getTerminal();
         add(terminal);
         pack();
-        screen = new StartScreen();
         addKeyListener(this);
-        repaint();
+        loop.start();
 
+        // Screens that change on their own, like the start screen showing the progress of the world, are redrawn, and
+        // the title shows how long it takes until a key press can be seen
+        new Timer(100, event -> {
+            loop.requestRepaint();
+            setTitle(String.format("Trystan's Roguelike - input latency %.1f ms avg, %.1f ms max",
+                    loop.getAverageLatencyNanos() / 1e6, loop.getMaxLatencyNanos() / 1e6));
+        }).start();
     }
 
     /**
-     * Clears the AsciiPanel and displays the output of the current screen on the terminal. This method is responsible
-     * for refreshing the contents of the game window and updating it to reflect the current game state. First, it
-     * clears the AsciiPanel using the clear() method. Then, it calls the displayOutput() method of the current screen
-     * to draw the current screen's output onto the terminal. Finally, it calls the repaint() method of the JFrame
-     * superclass to update the game window and display the changes to the user.
-     */
-    public void repaint() {
-        terminal.clear();
-        screen.displayOutput(terminal);
-        super.repaint();
-    }
-
-    /**
-     * Main method that creates an instance of the ApplicationMain class and sets the window to be visible.
+     * Main method that creates an instance of the ApplicationMain class and sets the window to be visible. Usage:
+     * {@code ApplicationMain [snapshot]}, with a snapshot the game loads it instead of generating a world.
      *
      * @param args command line arguments
      */
     public static void main(String[] args) {
-        ApplicationMain applicationMain = new ApplicationMain();
+        ApplicationMain applicationMain = new ApplicationMain(args.length > 0 ? Paths.get(args[0]) : null);
         applicationMain.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         applicationMain.setLocationRelativeTo(null); // center the window
         applicationMain.setVisible(true);
@@ -64,14 +70,24 @@ public class ApplicationMain extends JFrame implements KeyListener {
     public void keyTyped(KeyEvent e) {
     }
 
+    /**
+     * Hands the key to the game loop, the Swing thread never waits for a turn.
+     *
+     * @param e the key event
+     */
     @Override
     public void keyPressed(KeyEvent e) {
-        screen = screen.respondToUserInput(e);
-        repaint();
+        loop.submit(e);
     }
 
+    /**
+     * Tells the game loop that the key was let go, so that its next press is not taken for a repeat.
+     *
+     * @param e the key event
+     */
     @Override
     public void keyReleased(KeyEvent e) {
+        loop.release(e);
     }
 
 }
@@ -0,0 +1,272 @@
+package net.zn80.trystansroguelike;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Smooths a map of floor and wall cells into caves with a cellular automaton. A cell becomes floor if at least half of
+ * the cells in its Moore neighborhood, the cell itself included, are floor. Cells outside the map are not counted.
+ * <p>
+ * Every row of the map is stored as bits in long words, a set bit is a floor. The neighbors of 64 cells are counted at
+ * once with bitwise adders, and every pass reads one buffer and writes the other. Large maps are split into bands of
+ * rows which are smoothed in parallel on the common ForkJoin pool.
+ */
+public class CaveSmoother {
+
+    /**
+     * Maps with fewer words than this are smoothed on the calling thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private final int width;
+    private final int height;
+    private final int words;
+    private final long lastWordMask;
+    private long[] cells;
+    private long[] buffer;
+
+    /**
+     * Creates a new smoother for a map of the given size in which every cell is a wall.
+     *
+     * @param width  the width of the map
+     * @param height the height of the map
+     */
+    public CaveSmoother(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.words = (width + 63) >>> 6;
+        this.lastWordMask = -1L >>> (words * 64 - width);
+        this.cells = new long[words * height];
+        this.buffer = new long[words * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of long words used to store one row.
+     *
+     * @return the number of words per row
+     */
+    public int getWordsPerRow() {
+        return words;
+    }
+
+    public boolean isFloor(int x, int y) {
+        return (cells[y * words + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    public void setFloor(int x, int y, boolean floor) {
+        int index = y * words + (x >>> 6);
+        if (floor) {
+            cells[index] |= 1L << x;
+        } else {
+            cells[index] &= ~(1L << x);
+        }
+    }
+
+    /**
+     * Sets 64 cells of a row at once. Bit i of the word is the cell at x = word * 64 + i, bits beyond the width of the
+     * map are ignored.
+     *
+     * @param y    the row to set
+     * @param word the index of the word within the row
+     * @param bits the cells, a set bit is a floor
+     */
+    public void setWord(int y, int word, long bits) {
+        cells[y * words + word] = word == words - 1 ? bits & lastWordMask : bits;
+    }
+
+    /**
+     * Applies the smoothing rule to the whole map the given number of times.
+     *
+     * @param times the number of passes
+     * @return this smoother, for method chaining
+     */
+    public CaveSmoother smooth(int times) {
+        for (int time = 0; time < times; time++) {
+            if (words * height < PARALLEL_THRESHOLD) {
+                smoothRows(cells, buffer, 0, height);
+            } else {
+                ForkJoinPool.commonPool().invoke(new Band(cells, buffer, 0, height));
+            }
+            // Swap the buffers, so that the next pass reads what this pass wrote
+            long[] smoothed = buffer;
+            buffer = cells;
+            cells = smoothed;
+        }
+        return this;
+    }
+
+    /**
+     * Unpacks the map into a row-major array of tile ordinals, as expected by {@link World#World(int, int, byte[], Rng)}.
+     *
+     * @return the ordinals of the tiles
+     */
+    public byte[] toTiles() {
+        byte floor = (byte) Tile.FLOOR.ordinal();
+        byte wall = (byte) Tile.WALL.ordinal();
+        byte[] tiles = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            int row = y * words;
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                tiles[offset + x] = (cells[row + (x >>> 6)] & (1L << x)) != 0 ? floor : wall;
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Smooths the rows from {@code fromY} up to, but not including, {@code toY}.
+     */
+    private void smoothRows(long[] src, long[] dst, int fromY, int toY) {
+        for (int y = fromY; y < toY; y++) {
+            smoothRow(src, dst, y);
+        }
+    }
+
+    private void smoothRow(long[] src, long[] dst, int y) {
+        // The number of rows and columns of the neighborhood that lie inside the map decides how many floors are needed
+        int rows = 1 + (y > 0 ? 1 : 0) + (y < height - 1 ? 1 : 0);
+        int interiorThreshold = (rows * 3 + 1) / 2;
+        int edgeThreshold = (rows * Math.min(2, width) + 1) / 2;
+
+        int above = y > 0 ? (y - 1) * words : -1;
+        int middle = y * words;
+        int below = y < height - 1 ? (y + 1) * words : -1;
+
+        for (int k = 0; k < words; k++) {
+            // Horizontal sums of three cells as two bit planes, for the rows above, at and below the cell
+            long a0 = 0;
+            long a1 = 0;
+            if (above >= 0) {
+                long w = west(src, above, k);
+                long c = src[above + k];
+                long e = east(src, above, k);
+                a0 = w ^ c ^ e;
+                a1 = (w & c) | (e & (w ^ c));
+            }
+            long m0;
+            long m1;
+            {
+                long w = west(src, middle, k);
+                long c = src[middle + k];
+                long e = east(src, middle, k);
+                m0 = w ^ c ^ e;
+                m1 = (w & c) | (e & (w ^ c));
+            }
+            long b0 = 0;
+            long b1 = 0;
+            if (below >= 0) {
+                long w = west(src, below, k);
+                long c = src[below + k];
+                long e = east(src, below, k);
+                b0 = w ^ c ^ e;
+                b1 = (w & c) | (e & (w ^ c));
+            }
+
+            // Add the three sums into a four bit count from 0 to 9
+            long bit0 = a0 ^ m0 ^ b0;
+            long carry0 = (a0 & m0) | (b0 & (a0 ^ m0));
+            long p = a1 ^ m1 ^ b1;
+            long q = (a1 & m1) | (b1 & (a1 ^ m1));
+            long bit1 = p ^ carry0;
+            long r = p & carry0;
+            long bit2 = q ^ r;
+            long bit3 = q & r;
+
+            long interior = atLeast(interiorThreshold, bit0, bit1, bit2, bit3);
+            long edge = atLeast(edgeThreshold, bit0, bit1, bit2, bit3);
+            long edgeMask = edgeMask(k);
+            long result = (interior & ~edgeMask) | (edge & edgeMask);
+            dst[middle + k] = k == words - 1 ? result & lastWordMask : result;
+        }
+    }
+
+    /**
+     * Returns the word with every cell shifted one column to the east, so that each bit holds its western neighbor.
+     */
+    private long west(long[] src, int row, int k) {
+        long shifted = src[row + k] << 1;
+        return k > 0 ? shifted | (src[row + k - 1] >>> 63) : shifted;
+    }
+
+    /**
+     * Returns the word with every cell shifted one column to the west, so that each bit holds its eastern neighbor.
+     */
+    private long east(long[] src, int row, int k) {
+        long shifted = src[row + k] >>> 1;
+        return k < words - 1 ? shifted | (src[row + k + 1] << 63) : shifted;
+    }
+
+    /**
+     * Returns the bits of the given word that belong to the first or the last column of the map.
+     */
+    private long edgeMask(int k) {
+        long mask = 0;
+        if (k == 0) {
+            mask |= 1L;
+        }
+        if (k == (width - 1) >>> 6) {
+            mask |= 1L << (width - 1);
+        }
+        return mask;
+    }
+
+    /**
+     * Compares a bit-sliced count against a constant, setting every bit whose count is at least the threshold.
+     */
+    private static long atLeast(int threshold, long bit0, long bit1, long bit2, long bit3) {
+        switch (threshold) {
+            case 0:
+                return -1L;
+            case 1:
+                return bit0 | bit1 | bit2 | bit3;
+            case 2:
+                return bit1 | bit2 | bit3;
+            case 3:
+                return (bit1 & bit0) | bit2 | bit3;
+            case 4:
+                return bit2 | bit3;
+            case 5:
+                return (bit2 & (bit1 | bit0)) | bit3;
+            default:
+                throw new IllegalArgumentException("Unsupported threshold " + threshold);
+        }
+    }
+
+    /**
+     * Smooths a band of rows, splitting it in halves until the bands are small enough.
+     */
+    private class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] src;
+        private final long[] dst;
+        private final int fromY;
+        private final int toY;
+
+        Band(long[] src, long[] dst, int fromY, int toY) {
+            this.src = src;
+            this.dst = dst;
+            this.fromY = fromY;
+            this.toY = toY;
+        }
+
+        @Override
+        protected void compute() {
+            if ((toY - fromY) * words <= PARALLEL_THRESHOLD / 4 || toY - fromY < 2) {
+                smoothRows(src, dst, fromY, toY);
+                return;
+            }
+            int middle = (fromY + toY) >>> 1;
+            invokeAll(new Band(src, dst, fromY, middle), new Band(src, dst, middle, toY));
+        }
+    }
+}
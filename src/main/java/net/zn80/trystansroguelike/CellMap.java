@@ -0,0 +1,93 @@
+package net.zn80.trystansroguelike;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from cell keys to positive int values, without boxing. It uses open addressing with linear probing and
+ * takes memory in proportion to its entries, not to the size of the world. A value of 0 means that there is no entry.
+ */
+class CellMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    CellMap() {
+        keys = new long[16];
+        values = new int[16];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            if (keys[i] == EMPTY) {
+                return 0;
+            }
+        }
+    }
+
+    void put(long key, int value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = index(key, mask);
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY) {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    void remove(long key) {
+        int mask = keys.length - 1;
+        int i = index(key, mask);
+        while (keys[i] != key) {
+            if (keys[i] == EMPTY) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = EMPTY;
+        size--;
+
+        // Move the following entries of the probe sequence back, so that no lookup stops early at the gap
+        for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = index(keys[j], mask);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = EMPTY;
+                i = j;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int index(long key, int mask) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,288 @@
+package net.zn80.trystansroguelike;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the tiles of a very large world in square chunks that are generated when they are first needed. Only a limited
+ * number of chunks is kept in memory, the chunk that was used least recently is evicted first. Evicted chunks that were
+ * changed, for example by digging, are written to a spill directory and read back from there when they are needed
+ * again. Unchanged chunks are simply generated again. {@link #close()} deletes the spilled chunks.
+ * <p>
+ * Every cell starts out as floor or wall depending only on the world seed and its coordinates. A chunk is generated by
+ * smoothing the chunk together with an apron of {@link #PASSES} cells around it, which is the furthest the smoothing
+ * can look. So every chunk comes out exactly as if the whole world had been smoothed at once, and the caves continue
+ * seamlessly across the chunk edges.
+ * <p>
+ * The chunks in memory are found by their key in a {@link CellMap}, without boxing, and the chunk used last is kept at
+ * hand, so that reading the cells of one chunk after another does not look up the chunk at all. The chunks are kept in
+ * a list from the one used most recently to the one used least recently, which is evicted first.
+ * <p>
+ * The methods of this class are synchronized, as even reading a tile may load a chunk.
+ */
+public class ChunkedTileStore implements TileStore, AutoCloseable {
+
+    /**
+     * The number of smoothing passes, the same as {@link WorldBuilder#makeCaves()} uses.
+     */
+    private static final int PASSES = 8;
+
+    private final int width;
+    private final int height;
+    private final long seed;
+    private final int chunkSize;
+    private final int chunksPerRow;
+    private final Path spillDirectory;
+    private final boolean ownsSpillDirectory;
+    private final int maxChunks;
+    /**
+     * The slot of every chunk in memory plus one, by the key of the chunk.
+     */
+    private final CellMap slots = new CellMap();
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final List<Path> spillFiles = new ArrayList<>();
+    // The chunks from the one used most recently to the one used least recently
+    private Chunk newest;
+    private Chunk oldest;
+
+    /**
+     * Creates a new store. No chunk is generated until it is needed.
+     *
+     * @param width          the width of the world
+     * @param height         the height of the world
+     * @param seed           the seed of the world
+     * @param chunkSize      the width and height of a chunk
+     * @param maxMemory      the maximum number of bytes the tiles of the chunks in memory may take
+     * @param spillDirectory the directory to write changed chunks to, or null to use a new temporary directory
+     */
+    public ChunkedTileStore(int width, int height, long seed, int chunkSize, long maxMemory, Path spillDirectory) {
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+        this.chunkSize = chunkSize;
+        this.chunksPerRow = (width + chunkSize - 1) / chunkSize;
+        this.ownsSpillDirectory = spillDirectory == null;
+        try {
+            this.spillDirectory = spillDirectory != null ? spillDirectory : Files.createTempDirectory("chunks");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (ownsSpillDirectory) {
+            this.spillDirectory.toFile().deleteOnExit();
+        }
+        this.maxChunks = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxMemory / ((long) chunkSize * chunkSize)));
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public synchronized byte get(int x, int y) {
+        return chunkAt(x, y).tiles[(y % chunkSize) * chunkSize + x % chunkSize];
+    }
+
+    @Override
+    public synchronized void set(int x, int y, byte ordinal) {
+        Chunk chunk = chunkAt(x, y);
+        chunk.tiles[(y % chunkSize) * chunkSize + x % chunkSize] = ordinal;
+        chunk.modified = true;
+    }
+
+    @Override
+    public synchronized void copyRow(int x, int y, int length, byte[] dest, int offset) {
+        int end = x + length;
+        while (x < end) {
+            // Copy up to the end of the chunk, then continue in the next one
+            int run = Math.min(end, (x / chunkSize + 1) * chunkSize) - x;
+            Chunk chunk = chunkAt(x, y);
+            System.arraycopy(chunk.tiles, (y % chunkSize) * chunkSize + x % chunkSize, dest, offset, run);
+            x += run;
+            offset += run;
+        }
+    }
+
+    /**
+     * Returns the number of chunks currently held in memory.
+     *
+     * @return the number of loaded chunks
+     */
+    public synchronized int getLoadedChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * Deletes the chunks that were spilled to disk, and the spill directory if the store created it. The store must not
+     * be used afterwards.
+     *
+     * @throws UncheckedIOException if a file can not be deleted
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            for (Path file : spillFiles) {
+                Files.deleteIfExists(file);
+            }
+            spillFiles.clear();
+            if (ownsSpillDirectory) {
+                Files.deleteIfExists(spillDirectory);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Chunk chunkAt(int x, int y) {
+        int cx = x / chunkSize;
+        int cy = y / chunkSize;
+        Chunk chunk = newest;
+        if (chunk != null && chunk.cx == cx && chunk.cy == cy) {
+            return chunk;
+        }
+        long key = (long) cy * chunksPerRow + cx;
+        int slot = slots.get(key) - 1;
+        if (slot >= 0) {
+            chunk = chunks.get(slot);
+            unlink(chunk);
+        } else {
+            chunk = load(cx, cy);
+            if (chunks.size() < maxChunks) {
+                chunk.slot = chunks.size();
+                chunks.add(chunk);
+            } else {
+                // The new chunk takes the slot of the chunk used least recently
+                Chunk evicted = oldest;
+                evict(evicted);
+                unlink(evicted);
+                slots.remove((long) evicted.cy * chunksPerRow + evicted.cx);
+                chunk.slot = evicted.slot;
+                chunks.set(chunk.slot, chunk);
+            }
+            slots.put(key, chunk.slot + 1);
+        }
+        // The chunk becomes the newest
+        chunk.older = newest;
+        if (newest != null) {
+            newest.newer = chunk;
+        } else {
+            oldest = chunk;
+        }
+        newest = chunk;
+        return chunk;
+    }
+
+    private void unlink(Chunk chunk) {
+        if (chunk.newer != null) {
+            chunk.newer.older = chunk.older;
+        } else {
+            newest = chunk.older;
+        }
+        if (chunk.older != null) {
+            chunk.older.newer = chunk.newer;
+        } else {
+            oldest = chunk.newer;
+        }
+        chunk.newer = null;
+        chunk.older = null;
+    }
+
+    private Chunk load(int cx, int cy) {
+        Path file = spillFile(cx, cy);
+        if (Files.exists(file)) {
+            try {
+                return new Chunk(cx, cy, Files.readAllBytes(file));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new Chunk(cx, cy, generate(cx, cy));
+    }
+
+    private void evict(Chunk chunk) {
+        if (!chunk.modified) {
+            return;
+        }
+        Path file = spillFile(chunk.cx, chunk.cy);
+        try {
+            if (!Files.exists(file)) {
+                spillFiles.add(file);
+                file.toFile().deleteOnExit();
+            }
+            Files.write(file, chunk.tiles);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path spillFile(int cx, int cy) {
+        return spillDirectory.resolve("chunk_" + cx + "_" + cy + ".bin");
+    }
+
+    /**
+     * Generates the tiles of a chunk by smoothing the chunk and its apron, then keeping the middle.
+     */
+    private byte[] generate(int cx, int cy) {
+        int x0 = cx * chunkSize;
+        int y0 = cy * chunkSize;
+        // The apron is clipped at the edges of the world, where the smoothing stops in the whole world as well
+        int fromX = Math.max(0, x0 - PASSES);
+        int fromY = Math.max(0, y0 - PASSES);
+        int toX = Math.min(width, x0 + chunkSize + PASSES);
+        int toY = Math.min(height, y0 + chunkSize + PASSES);
+
+        CaveSmoother caves = new CaveSmoother(toX - fromX, toY - fromY);
+        for (int y = fromY; y < toY; y++) {
+            for (int x = fromX; x < toX; x++) {
+                caves.setFloor(x - fromX, y - fromY, isFloorBeforeSmoothing(x, y));
+            }
+        }
+        caves.smooth(PASSES);
+
+        byte floor = (byte) Tile.FLOOR.ordinal();
+        byte wall = (byte) Tile.WALL.ordinal();
+        byte[] tiles = new byte[chunkSize * chunkSize];
+        for (int y = y0; y < Math.min(height, y0 + chunkSize); y++) {
+            for (int x = x0; x < Math.min(width, x0 + chunkSize); x++) {
+                tiles[(y - y0) * chunkSize + x - x0] = caves.isFloor(x - fromX, y - fromY) ? floor : wall;
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Decides whether a cell starts out as floor. This only depends on the seed and the coordinates, so every chunk
+     * sees the same cells in its apron as its neighbors do.
+     */
+    private boolean isFloorBeforeSmoothing(int x, int y) {
+        return Rng.hash(seed, x, y) < 0;
+    }
+
+    /**
+     * The tiles of one chunk, stored row-major, and its place among the chunks in memory.
+     */
+    private static class Chunk {
+        final int cx;
+        final int cy;
+        final byte[] tiles;
+        boolean modified;
+        int slot;
+        Chunk newer;
+        Chunk older;
+
+        Chunk(int cx, int cy, byte[] tiles) {
+            this.cx = cx;
+            this.cy = cy;
+            this.tiles = tiles;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package net.zn80.trystansroguelike;
+
+/**
+ * The commands the player can give in a turn. Each command is a {@link PlayerController} for one turn, and it is what
+ * the {@link Journal} records. The journal stores the ordinal of a command, so new commands must be added at the end.
+ */
+public enum Command implements PlayerController {
+    WAIT(0, 0),
+    WEST(-1, 0),
+    EAST(1, 0),
+    NORTH(0, -1),
+    SOUTH(0, 1),
+    NORTH_WEST(-1, -1),
+    NORTH_EAST(1, -1),
+    SOUTH_WEST(-1, 1),
+    SOUTH_EAST(1, 1),
+    DESCEND(0, 0),
+    ASCEND(0, 0);
+
+    private static final Command[] VALUES = values();
+
+    private final int dx;
+    private final int dy;
+
+    Command(int dx, int dy) {
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    /**
+     * Returns the command with the given ordinal.
+     *
+     * @param ordinal the ordinal of the command
+     * @return the command
+     * @throws IllegalArgumentException if there is no such command
+     */
+    public static Command fromOrdinal(int ordinal) {
+        if (ordinal < 0 || ordinal >= VALUES.length) {
+            throw new IllegalArgumentException("Unknown command " + ordinal);
+        }
+        return VALUES[ordinal];
+    }
+
+    /**
+     * Returns where the command takes the player if it stands on the right stairs, see {@link Simulation}.
+     *
+     * @return 1 for the level below, -1 for the level above, 0 if the command does not take stairs
+     */
+    public int getStairs() {
+        return this == DESCEND ? 1 : this == ASCEND ? -1 : 0;
+    }
+
+    /**
+     * Moves the player one step in the direction of the command, attacking any creature there, or asks to take the
+     * stairs, see {@link Creature#requestStairs(int)}. Waiting does nothing.
+     *
+     * @param player the player creature
+     */
+    @Override
+    public void act(Creature player) {
+        if (dx != 0 || dy != 0) {
+            player.moveBy(dx, dy);
+        } else if (getStairs() != 0) {
+            player.requestStairs(getStairs());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package net.zn80.trystansroguelike;
+
+import java.util.Arrays;
+
+/**
+ * Labels the connected regions of ground of a map, the caves a creature can walk between. Two ground cells are in the
+ * same region if there is a path of ground cells between them, diagonal steps included, like the moves of a creature.
+ * Cells that are not ground are in region 0.
+ * <p>
+ * The labels are found in one pass over the rows: each ground cell takes the label of a ground cell to its west or in
+ * the row above, and when those cells have different labels, the labels are joined in a union-find forest. A second
+ * pass replaces every label by the root of its tree and numbers the roots from 1. Trees are joined by size and every
+ * search halves the path it walks, so labelling takes time linear in the size of the map for any map that fits into
+ * memory, whatever the shape of its caves, and needs one int per cell plus two per label.
+ * <p>
+ * Cells only ever turn into ground, see {@link World#dig(int, int)}, so the labels are kept up to date by
+ * {@link #addGround(int, int)}, which joins the regions next to the new cell in constant time. Regions are joined by
+ * size, so {@link #regionOf(int, int)} follows at most a logarithmic number of links and does not write anything. It is
+ * safe to call while the turns are planned in parallel, as long as nothing is dug at the same time.
+ */
+public class Connectivity {
+
+    private final int width;
+    private final int height;
+    /**
+     * The label of every cell, row-major. 0 for cells that are not ground, otherwise a node of the forest.
+     */
+    private final int[] labels;
+    /**
+     * The forest of labels: the parent of each label, or the label itself for a root. Only roots have a size.
+     */
+    private int[] parents;
+    private int[] sizes;
+    private int labelCount;
+    private int regionCount;
+    private int largest;
+
+    /**
+     * Labels the regions of the given tiles.
+     *
+     * @param tiles the tiles to label
+     */
+    public Connectivity(TileStore tiles) {
+        this.width = tiles.getWidth();
+        this.height = tiles.getHeight();
+        this.labels = new int[width * height];
+        this.parents = new int[64];
+        this.sizes = new int[64];
+        label(tiles);
+    }
+
+    private void label(TileStore tiles) {
+        byte[] row = new byte[width];
+        for (int y = 0; y < height; y++) {
+            tiles.copyRow(0, y, width, row, 0);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                if (!Tile.fromOrdinal(row[x]).isGround()) {
+                    continue;
+                }
+                // Cells hold roots while they are labelled, so the trees stay shallow and the joins stay cheap
+                int label = x > 0 && labels[offset + x - 1] != 0 ? find(labels[offset + x - 1]) : 0;
+                if (y > 0) {
+                    int above = offset - width;
+                    for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, width - 1); nx++) {
+                        int neighbour = labels[above + nx];
+                        if (neighbour == 0) {
+                            continue;
+                        }
+                        label = label == 0 ? find(neighbour) : union(label, neighbour);
+                    }
+                }
+                if (label == 0) {
+                    label = newLabel();
+                }
+                labels[offset + x] = label;
+                sizes[label]++;
+            }
+        }
+
+        // Number the roots from 1 and point every cell at its root, so that every tree is a single node again
+        int[] numbers = new int[labelCount + 1];
+        int regions = 0;
+        for (int label = 1; label <= labelCount; label++) {
+            if (parents[label] == label) {
+                numbers[label] = ++regions;
+            }
+        }
+        int[] regionSizes = new int[Math.max(regions + 1, 64)];
+        for (int label = 1; label <= labelCount; label++) {
+            if (numbers[label] != 0) {
+                regionSizes[numbers[label]] = sizes[label];
+            }
+        }
+        for (int cell = 0; cell < labels.length; cell++) {
+            if (labels[cell] != 0) {
+                labels[cell] = numbers[find(labels[cell])];
+            }
+        }
+        parents = new int[regionSizes.length];
+        sizes = regionSizes;
+        largest = 0;
+        for (int region = 1; region <= regions; region++) {
+            parents[region] = region;
+            if (largest == 0 || sizes[region] > sizes[largest]) {
+                largest = region;
+            }
+        }
+        labelCount = regions;
+        regionCount = regions;
+    }
+
+    private int newLabel() {
+        labelCount++;
+        if (labelCount == parents.length) {
+            parents = Arrays.copyOf(parents, labelCount * 2);
+            sizes = Arrays.copyOf(sizes, labelCount * 2);
+        }
+        parents[labelCount] = labelCount;
+        sizes[labelCount] = 0;
+        regionCount++;
+        return labelCount;
+    }
+
+    /**
+     * Returns the root of the tree of a label and halves the path to it on the way, so that the next search takes
+     * fewer steps. Only called by the thread that labels the cells or digs.
+     */
+    private int find(int label) {
+        while (parents[label] != label) {
+            parents[label] = parents[parents[label]];
+            label = parents[label];
+        }
+        return label;
+    }
+
+    /**
+     * Returns the root of the tree of a label without changing the forest, so that it may be called from several
+     * threads at once.
+     */
+    private int root(int label) {
+        while (parents[label] != label) {
+            label = parents[label];
+        }
+        return label;
+    }
+
+    /**
+     * Joins the trees of two labels, the smaller one below the root of the larger one, and returns the root of the
+     * joined tree. Of two trees of the same size, the later root goes below the earlier one.
+     */
+    private int union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return rootA;
+        }
+        if (sizes[rootA] < sizes[rootB] || sizes[rootA] == sizes[rootB] && rootB < rootA) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        parents[rootB] = rootA;
+        sizes[rootA] += sizes[rootB];
+        sizes[rootB] = 0;
+        regionCount--;
+        return rootA;
+    }
+
+    /**
+     * Returns the region of the given cell. Two cells are connected if and only if they are in the same region, and
+     * the region stays the same until the region is joined with another one.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     * @return the region, or 0 if the cell is not ground or outside of the map
+     */
+    public int regionOf(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return 0;
+        }
+        int label = labels[y * width + x];
+        return label == 0 ? 0 : root(label);
+    }
+
+    /**
+     * Returns the number of cells of a region.
+     *
+     * @param region the region, see {@link #regionOf(int, int)}
+     * @return the number of cells, or 0 if there is no such region
+     */
+    public int getSize(int region) {
+        return region <= 0 || region > labelCount || parents[region] != region ? 0 : sizes[region];
+    }
+
+    /**
+     * Returns the region with the most cells.
+     *
+     * @return the region, or 0 if the map has no ground at all
+     */
+    public int getLargestRegion() {
+        return largest == 0 ? 0 : root(largest);
+    }
+
+    /**
+     * Returns the number of regions.
+     *
+     * @return the number of regions
+     */
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    /**
+     * Records that a cell turned into ground. The cell joins the regions of the ground cells around it, or becomes a
+     * region of its own.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     */
+    void addGround(int x, int y) {
+        int cell = y * width + x;
+        if (labels[cell] != 0) {
+            return;
+        }
+        int region = 0;
+        for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, height - 1); ny++) {
+            for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, width - 1); nx++) {
+                int neighbour = labels[ny * width + nx];
+                if (neighbour != 0) {
+                    region = region == 0 ? find(neighbour) : union(region, neighbour);
+                }
+            }
+        }
+        if (region == 0) {
+            region = newLabel();
+        }
+        labels[cell] = region;
+        sizes[region]++;
+        if (largest == 0 || sizes[region] > sizes[find(largest)]) {
+            largest = region;
+        }
+    }
+}
@@ -1,35 +1,52 @@
 package net.zn80.trystansroguelike;
 
 import java.awt.*;
+import java.util.Set;
 
+/**
+ * A handle to a creature. While the creature belongs to a world, its position, hit points and type are kept in the
+ * creature store of the world, in the slot of the creature; the handle only keeps what the store has no column for. A
+ * creature that has not been added yet, or was removed, keeps its last state in the handle itself.
+ */
 public class Creature {
 
     private final World world;
-    private final char glyph;
-    private final Color color;
-    private final int maxHp;
-    private final int attackValue;
-    private final int defenseValue;
+    private final CreatureStore store;
+    private final Rng rng;
+    private CreatureAi ai;
+    private int slot = -1;
+    private int eventMask;
+    private int stairsRequest;
+    // Only used while the creature is not in the world
+    private CreatureType type;
     private int x;
     private int y;
-    private CreatureAi ai;
     private int hp;
 
     /**
-     * Creates a new creature with the specified attributes.
+     * Creates a new creature of the specified type. The creature starts with full hit points and is not in the world
+     * until it is added.
      *
      * @param world the world in which the creature exists
-     * @param glyph the glyph representing the creature
-     * @param color the color of the creature on the screen
+     * @param type  the type of the creature
      */
-    public Creature(World world, char glyph, Color color, int maxHp, int attackValue, int defenseValue) {
+    public Creature(World world, CreatureType type) {
+        this(world, type, world.getRng().split());
+    }
+
+    /**
+     * Creates a new creature of the specified type that draws its random numbers from the given generator.
+     *
+     * @param world the world in which the creature exists
+     * @param type  the type of the creature
+     * @param rng   the random number generator of the creature
+     */
+    Creature(World world, CreatureType type, Rng rng) {
         this.world = world;
-        this.glyph = glyph;
-        this.color = color;
-        this.maxHp = maxHp;
-        this.hp = maxHp;
-        this.attackValue = attackValue;
-        this.defenseValue = defenseValue;
+        this.store = world.getCreatureStore();
+        this.type = type;
+        this.hp = type.getMaxHp();
+        this.rng = rng;
     }
 
     /**
@@ -41,6 +58,8 @@ public class Creature {
      */
     public void moveBy(int mx, int my) {
         // Check if there is a creature at the new location
+        int x = getX();
+        int y = getY();
         Creature other = world.getCreature(x + mx, y + my);
         if (other == null) {
             // If there is no creature, call the OnEnter method of the creature's (player's) AI with the new location
@@ -59,99 +78,105 @@ public class Creature {
      */
     public void attack(Creature other) {
         int amount = Math.max(0, getAttackValue() - other.getAttackValue());
-        amount = (int) (Math.random() * amount) + 1;
+        amount = rng.nextInt(Math.max(1, amount)) + 1;
 
-        doAction("attack the '%s'for %d damage", other.glyph, amount);
+        doAction(Event.Kind.ATTACK, other, other.getX(), other.getY(), amount);
 
         other.modifyHp(-amount);
     }
 
     public int getAttackValue() {
-        return attackValue;
-    }
-
-    /**
-     * Performs an action within a radius around the creature, sending a message to all creatures affected by the
-     * action. The action message is displayed in second person for the player creature and in third person for other
-     * creatures.
-     *
-     * @param message the message to send to affected creatures
-     * @param params  any additional parameters to include in the message
-     */
-    public void doAction(String message, Object... params) {
-        int radius = 9;
-        for (int ox = -radius; ox < radius + 1; ox++) {
-            for (int oy = -radius; oy < radius + 1; oy++) {
-                // Check if the coordinates are within the radius
-                if (ox * ox + oy * oy > radius * radius) {
-                    continue;
-                }
-
-                // Get the creature at the current coordinates
-                Creature other = world.getCreature(x + ox, y + oy);
-
-                // If there's no creature at the current coordinates, continue to the next set of coordinates
-                if (other == null) {
-                    continue;
-                }
-
-                // Send the appropriate message to the affected creature(s)
-                if (other == this) {
-                    // If the affected creature is the same, as the one performaing the action, send the message
-                    other.notify("You " + message + ".", params);
-                } else {
-                    // If the affected creature is not the same as the one performing the action, send the message in second person
-                    other.notify(String.format("The '%s' %s.", glyph, makeSecondPerson(message)), params);
-                }
-            }
-        }
+        return getType().getAttackValue();
+    }
+
+    /**
+     * Publishes an action of this creature as an event, see {@link EventBus#publish}. Only the creatures nearby that
+     * subscribed to this kind of event receive it.
+     *
+     * @param kind   the kind of the action
+     * @param target the creature acted upon, or null
+     * @param x      the x-coordinate of the cell acted upon
+     * @param y      the y-coordinate of the cell acted upon
+     * @param amount the damage of an attack, or 0
+     */
+    public void doAction(Event.Kind kind, Creature target, int x, int y, int amount) {
+        long start = Metrics.start();
+        world.getEvents().publish(kind, this, target, x, y, amount);
+        Metrics.stop(Metrics.Probe.DO_ACTION, start, this);
     }
 
     public void modifyHp(int amount) {
-        hp += amount;
+        int hp = getHp() + amount;
+        if (slot >= 0) {
+            store.setHp(slot, hp);
+        } else {
+            this.hp = hp;
+        }
         if (hp < 1) {
-            doAction("die");
+            doAction(Event.Kind.DIE, null, getX(), getY(), 0);
             world.remove(this);
         }
     }
 
     /**
-     * Notifies the AI component with a formatted message and optional parameters.
+     * Passes an event to the AI component. The event is reused after this method returns.
      *
-     * @param message the message to be formatted and passed to the AI component
-     * @param params  optional parameters to be included in the formatted message
+     * @param event the event to pass to the AI component
      */
-    public void notify(String message, Object... params) {
-        ai.onNotify(String.format(message, params));
+    public void notify(Event event) {
+        ai.onEvent(event);
     }
 
     /**
-     * Takes a String of text and modifies the first word by adding an "s" at the end to make it second person. The
-     * modified String is returned.
+     * Subscribes this creature to the given kinds of events of its world.
      *
-     * @param text the text to be modified
-     * @return the modified text with the first word in second-person form
+     * @param kinds the kinds of events to receive
      */
-    private String makeSecondPerson(String text) {
-        String[] words = text.split(" ", 2);
-        if (words.length < 2) {
-            return text;
-        }
-        String verb = words[0] + "s";
-        String rest = words[1];
-        return String.format("%s %s", verb, rest);
+    public void subscribe(Set<Event.Kind> kinds) {
+        world.getEvents().subscribe(this, kinds);
+    }
+
+    /**
+     * Returns the kinds of events this creature subscribed to, as a mask of {@link Event.Kind#mask()} bits.
+     *
+     * @return the mask of subscribed kinds, 0 if the creature did not subscribe
+     */
+    int getEventMask() {
+        return eventMask;
+    }
+
+    void setEventMask(int eventMask) {
+        this.eventMask = eventMask;
+    }
+
+    /**
+     * Returns the random number generator of this creature, split off the generator of its world.
+     *
+     * @return the random number generator of this creature
+     */
+    public Rng getRng() {
+        return rng;
+    }
+
+    /**
+     * Returns the type of the creature, which holds its glyph, color and stats.
+     *
+     * @return the type of the creature
+     */
+    public CreatureType getType() {
+        return slot >= 0 ? CreatureType.byId(store.getType(slot)) : type;
     }
 
     public int getMaxHp() {
-        return maxHp;
+        return getType().getMaxHp();
     }
 
     public int getHp() {
-        return hp;
+        return slot >= 0 ? store.getHp(slot) : hp;
     }
 
     public int getDefenseValue() {
-        return defenseValue;
+        return getType().getDefenseValue();
     }
 
     /**
@@ -160,7 +185,7 @@ public class Creature {
      * @return the glyph representing the creature
      */
     public char getGlyph() {
-        return glyph;
+        return getType().getGlyph();
     }
 
     /**
@@ -169,7 +194,7 @@ public class Creature {
      * @return the color of the creature on the screen
      */
     public Color getColor() {
-        return color;
+        return getType().getColor();
     }
 
     /**
@@ -178,7 +203,7 @@ public class Creature {
      * @return the horizontal position of the creature
      */
     public int getX() {
-        return x;
+        return slot >= 0 ? store.getX(slot) : x;
     }
 
     /**
@@ -187,7 +212,7 @@ public class Creature {
      * @param x the new horizontal position of the creature
      */
     public void setX(int x) {
-        this.x = x;
+        setPosition(x, getY());
     }
 
     /**
@@ -196,7 +221,7 @@ public class Creature {
      * @return the vertical position of the creature
      */
     public int getY() {
-        return y;
+        return slot >= 0 ? store.getY(slot) : y;
     }
 
     /**
@@ -205,23 +230,160 @@ public class Creature {
      * @param y the new vertical position of the creature
      */
     public void setY(int y) {
-        this.y = y;
+        setPosition(getX(), y);
+    }
+
+    /**
+     * Moves the creature to the given position in one step and keeps the occupancy index of the world up to date.
+     *
+     * @param x the new horizontal position of the creature
+     * @param y the new vertical position of the creature
+     * @throws IllegalStateException if the creature belongs to a world and the position is outside of it or another
+     *                               creature stands there, see {@link #canEnter(int, int)}
+     */
+    public void setPosition(int x, int y) {
+        if (slot >= 0) {
+            world.moveCreature(this, x, y);
+        } else {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * Called by the world when the creature moves into a slot of the creature store, or out of it. Leaving the store
+     * copies the state of the creature back into the handle.
+     *
+     * @param slot the new slot, or -1 if the creature leaves the world
+     */
+    void setSlot(int slot) {
+        if (slot < 0 && this.slot >= 0) {
+            type = CreatureType.byId(store.getType(this.slot));
+            x = store.getX(this.slot);
+            y = store.getY(this.slot);
+            hp = store.getHp(this.slot);
+        }
+        this.slot = slot;
+    }
+
+    /**
+     * Returns the slot of the creature in the creature list of its world.
+     *
+     * @return the slot of the creature, or -1 if the creature has not been added to a world
+     */
+    int getSlot() {
+        return slot;
     }
 
     public void setCreatureAi(CreatureAi ai) {
         this.ai = ai;
     }
 
+    CreatureAi getCreatureAi() {
+        return ai;
+    }
+
+    World getWorld() {
+        return world;
+    }
+
+    /**
+     * Returns whether this creature sees the given cell, see {@link CreatureAi#canSee(int, int)}.
+     *
+     * @param wx the x-coordinate of the cell
+     * @param wy the y-coordinate of the cell
+     * @return true if the creature sees the cell
+     */
+    public boolean canSee(int wx, int wy) {
+        return ai.canSee(wx, wy);
+    }
+
     public void dig(int wx, int wy) {
         world.dig(wx, wy);
-        doAction("dig field %d.%d", wx, wy);
+        doAction(Event.Kind.DIG, null, wx, wy, 0);
+    }
+
+    /**
+     * Asks the world for a child of this creature at the given cell, see {@link World#requestSpawn}.
+     *
+     * @param wx the x-coordinate of the child
+     * @param wy the y-coordinate of the child
+     */
+    public void requestSpawn(int wx, int wy) {
+        world.requestSpawn(this, wx, wy);
+    }
+
+    /**
+     * Asks to take the stairs this creature stands on. A {@link PlayerController} calls this for the player, and the
+     * {@link Simulation} moves the player to the level above or below once the controller acted, if the player stands
+     * on the stairs leading there. Other creatures do not change levels.
+     *
+     * @param direction 1 to go down, -1 to go up
+     * @throws IllegalArgumentException if the direction is neither 1 nor -1
+     */
+    public void requestStairs(int direction) {
+        if (direction != 1 && direction != -1) {
+            throw new IllegalArgumentException("Stairs lead one level up or down, not " + direction);
+        }
+        stairsRequest = direction;
+    }
+
+    /**
+     * Returns the stairs this creature asked to take since the last call, and forgets the request.
+     *
+     * @return 1 for the level below, -1 for the level above, 0 if the creature did not ask
+     */
+    int takeStairsRequest() {
+        int direction = stairsRequest;
+        stairsRequest = 0;
+        return direction;
     }
 
     /**
-     * This method instructs the creature to take its turn by calling the onTakeTurn() method of its AI.
+     * Lets the AI create a child of this creature, see {@link CreatureAi#createChild()}.
+     *
+     * @return the child, which has not been added to the world yet, or null
+     */
+    public Creature createChild() {
+        return ai.createChild();
+    }
+
+    /**
+     * This method instructs the creature to take its turn on its own, by letting its AI plan the turn and carrying out
+     * the plan right away.
      */
     public void takeTurn() {
-        ai.onTakeTurn();
+        Intent intent = planTurn();
+        if (intent != null) {
+            carryOut(intent);
+        }
+    }
+
+    /**
+     * Lets the AI plan the turn of this creature without changing the world, see {@link CreatureAi#planTurn()}.
+     *
+     * @return the intent of the creature, or null if it does nothing
+     */
+    public Intent planTurn() {
+        return ai.planTurn();
+    }
+
+    /**
+     * Lets the AI carry out an intent it planned, see {@link CreatureAi#carryOut(Intent)}.
+     *
+     * @param intent the intent to carry out
+     */
+    public void carryOut(Intent intent) {
+        ai.carryOut(intent);
+    }
+
+    /**
+     * Returns whether the creature belongs to a world, which is no longer the case once it died.
+     *
+     * @return true if the creature is in its world
+     */
+    public boolean isInWorld() {
+        return slot >= 0;
     }
 
     /**
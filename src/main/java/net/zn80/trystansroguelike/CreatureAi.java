@@ -11,9 +11,92 @@ public class CreatureAi {
     public void OnEnter(int i, int i1, Tile tile) {
     }
 
-    public void onTakeTurn() {
+    /**
+     * Decides what the creature does in this turn. Turns of many creatures are planned at the same time on several
+     * threads, so this method must not change the world or any other creature. It may only read them and use the
+     * random number generator of its own creature.
+     *
+     * @return the intent of the creature, or null if it does nothing
+     */
+    public Intent planTurn() {
+        return null;
     }
 
-    public void onNotify(String format) {
+    /**
+     * Carries out an intent returned by {@link #planTurn()}. Intents are carried out one creature after another, so
+     * this method may change the world. The intent is checked again first, as the world may have changed since the
+     * turn was planned.
+     *
+     * @param intent the intent to carry out
+     */
+    public void carryOut(Intent intent) {
+        switch (intent.getKind()) {
+            case MOVE:
+                if (creature.canEnter(intent.getX(), intent.getY())) {
+                    creature.setPosition(intent.getX(), intent.getY());
+                }
+                break;
+            case ATTACK:
+                if (intent.getTarget().isInWorld()) {
+                    creature.attack(intent.getTarget());
+                }
+                break;
+            case DIG:
+                creature.dig(intent.getX(), intent.getY());
+                break;
+            case SPAWN:
+                creature.requestSpawn(intent.getX(), intent.getY());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Creates a child of the creature for a spawn request that was accepted, see {@link World#requestSpawn}. The world
+     * places the child and adds it.
+     *
+     * @return a new creature that has not been added to the world yet, or null if this creature has no children
+     */
+    public Creature createChild() {
+        return null;
+    }
+
+    /**
+     * Receives an event the creature subscribed to. The event is reused once this method returns, so it must not be
+     * kept.
+     *
+     * @param event the event
+     */
+    public void onEvent(Event event) {
+    }
+
+    /**
+     * Returns whether the creature sees the given cell. Events are only delivered to creatures that see where they
+     * happen. Creatures without a field of view see everything within reach of the event bus.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     * @return true if the creature sees the cell
+     */
+    public boolean canSee(int x, int y) {
+        return true;
+    }
+
+    /**
+     * Returns the state of the AI that has to be kept in a saved game. AIs without state return 0.
+     *
+     * @return the state of the AI
+     */
+    public int getState() {
+        return 0;
+    }
+
+    /**
+     * Restores the state returned by {@link #getState()} when a saved game is loaded.
+     *
+     * @param state the state of the AI
+     */
+    public void setState(int state) {
     }
 }
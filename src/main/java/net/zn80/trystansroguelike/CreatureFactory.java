@@ -5,22 +5,79 @@ import net.trystan.asciipanel.AsciiPanel;
 import java.util.List;
 
 public class CreatureFactory {
+    public static final CreatureType PLAYER = new CreatureType("player", '@', AsciiPanel.brightWhite, 100, 20, 5);
+    public static final CreatureType FUNGUS = new CreatureType("fungus", 'F', AsciiPanel.green, 10, 0, 0);
+
     private World world;
 
     public CreatureFactory(World world) {
         this.world = world;
     }
 
-    public Creature newPlayer(List<String> messages) {
-        Creature player = new Creature(world, '@', AsciiPanel.brightWhite, 100, 20, 5);
-        world.addAtEmptyLocation(player);
+    /**
+     * Creates the player in the largest cave of the world, see {@link World#regionOf(int, int)}, so that the player
+     * does not start in a pocket cut off from the rest.
+     *
+     * @param messages the log of messages to display to the player
+     * @return the player
+     */
+    public Creature newPlayer(MessageLog messages) {
+        Creature player = new Creature(world, PLAYER);
+        Connectivity connectivity = world.getConnectivity();
+        if (connectivity != null && connectivity.getLargestRegion() != 0) {
+            world.addAtEmptyLocation(player, connectivity.getLargestRegion());
+        } else {
+            world.addAtEmptyLocation(player);
+        }
         new PlayerAi(player, messages);
         return player;
     }
 
     public Creature newFungus() {
-        Creature fungus = new Creature(world, 'F', AsciiPanel.green, 10, 0, 0);
+        Creature fungus = createFungus();
         world.addAtEmptyLocation(fungus);
+        return fungus;
+    }
+
+    /**
+     * Creates the given number of fungi at random empty locations, see {@link World#spawnMany}.
+     *
+     * @param count the number of fungi to create
+     * @return the new fungi
+     */
+    public List<Creature> newFungi(int count) {
+        return world.spawnMany(this::createFungus, count);
+    }
+
+    /**
+     * Creates a creature of the given type with the AI that belongs to the type, for example when a saved game is
+     * loaded. The creature continues with the given random number generator and has not been added to the world yet.
+     *
+     * @param type     the type of the creature
+     * @param rng      the random number generator of the creature
+     * @param messages the log of messages to display to the player, only used for the player
+     * @return the new creature
+     * @throws IllegalArgumentException if the factory does not know the type
+     */
+    public Creature restore(CreatureType type, Rng rng, MessageLog messages) {
+        Creature creature = new Creature(world, type, rng);
+        if (type == PLAYER) {
+            new PlayerAi(creature, messages);
+        } else if (type == FUNGUS) {
+            new FungusAi(creature, this);
+        } else {
+            throw new IllegalArgumentException("Unknown creature type " + type.getName());
+        }
+        return creature;
+    }
+
+    /**
+     * Creates a fungus that has not been added to the world yet.
+     *
+     * @return the new fungus
+     */
+    public Creature createFungus() {
+        Creature fungus = new Creature(world, FUNGUS);
         new FungusAi(fungus, this);
         return fungus;
     }
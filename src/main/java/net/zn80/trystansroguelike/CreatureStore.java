@@ -0,0 +1,102 @@
+package net.zn80.trystansroguelike;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the state of the creatures of a world in parallel arrays, one entry per slot: position, hit points and type id,
+ * plus the {@link Creature} handle that belongs to the slot. Loops over many creatures read the arrays from start to
+ * end instead of following a reference per creature.
+ * <p>
+ * The slots are always packed: removing a creature moves the creature in the last slot into the free slot.
+ */
+class CreatureStore {
+
+    private Creature[] handles = new Creature[16];
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+    private int[] hps = new int[16];
+    private int[] types = new int[16];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    Creature getHandle(int slot) {
+        return handles[slot];
+    }
+
+    int getX(int slot) {
+        return xs[slot];
+    }
+
+    int getY(int slot) {
+        return ys[slot];
+    }
+
+    int getHp(int slot) {
+        return hps[slot];
+    }
+
+    int getType(int slot) {
+        return types[slot];
+    }
+
+    void setPosition(int slot, int x, int y) {
+        xs[slot] = x;
+        ys[slot] = y;
+    }
+
+    void setHp(int slot, int hp) {
+        hps[slot] = hp;
+    }
+
+    /**
+     * Adds a creature in the next free slot.
+     *
+     * @return the slot of the creature
+     */
+    int add(Creature handle, int type, int x, int y, int hp) {
+        if (size == handles.length) {
+            int capacity = size * 2;
+            handles = Arrays.copyOf(handles, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            hps = Arrays.copyOf(hps, capacity);
+            types = Arrays.copyOf(types, capacity);
+        }
+        handles[size] = handle;
+        xs[size] = x;
+        ys[size] = y;
+        hps[size] = hp;
+        types[size] = type;
+        return size++;
+    }
+
+    /**
+     * Removes the creature in the given slot and moves the creature in the last slot into it.
+     *
+     * @return the creature that moved into the slot, or null if the last slot was removed
+     */
+    Creature remove(int slot) {
+        int last = --size;
+        Creature moved = null;
+        if (slot != last) {
+            moved = handles[last];
+            handles[slot] = moved;
+            xs[slot] = xs[last];
+            ys[slot] = ys[last];
+            hps[slot] = hps[last];
+            types[slot] = types[last];
+        }
+        handles[last] = null;
+        return moved;
+    }
+
+    /**
+     * Returns the creatures in slot order, as they are right now.
+     */
+    Creature[] snapshot() {
+        return Arrays.copyOf(handles, size);
+    }
+}
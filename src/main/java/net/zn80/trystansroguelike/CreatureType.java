@@ -0,0 +1,104 @@
+package net.zn80.trystansroguelike;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * The attributes all creatures of one kind share: glyph, color and stats. Every type gets an id when it is created, and
+ * the creature store of a world only keeps the id of each creature's type, see {@link #byId(int)}.
+ */
+public class CreatureType {
+
+    private static volatile CreatureType[] table = new CreatureType[0];
+
+    private final int id;
+    private final String name;
+    private final char glyph;
+    private final Color color;
+    private final int maxHp;
+    private final int attackValue;
+    private final int defenseValue;
+
+    /**
+     * Creates a new creature type and adds it to the type table.
+     *
+     * @param name         the unique name of the type, which is used to find the type in saved games
+     * @param glyph        the glyph representing creatures of this type
+     * @param color        the color of creatures of this type on the screen
+     * @param maxHp        the hit points creatures of this type start with
+     * @param attackValue  the attack value of creatures of this type
+     * @param defenseValue the defense value of creatures of this type
+     */
+    public CreatureType(String name, char glyph, Color color, int maxHp, int attackValue, int defenseValue) {
+        this.name = name;
+        this.glyph = glyph;
+        this.color = color;
+        this.maxHp = maxHp;
+        this.attackValue = attackValue;
+        this.defenseValue = defenseValue;
+        this.id = register(this);
+    }
+
+    private static synchronized int register(CreatureType type) {
+        // Replace the table instead of changing it, so that readers never see a half written table
+        CreatureType[] grown = Arrays.copyOf(table, table.length + 1);
+        grown[table.length] = type;
+        table = grown;
+        return table.length - 1;
+    }
+
+    /**
+     * Returns the type with the given id.
+     *
+     * @param id the id of the type
+     * @return the type
+     * @throws ArrayIndexOutOfBoundsException if there is no type with this id
+     */
+    public static CreatureType byId(int id) {
+        return table[id];
+    }
+
+    /**
+     * Returns the type with the given name.
+     *
+     * @param name the name of the type
+     * @return the type
+     * @throws IllegalArgumentException if there is no type with this name
+     */
+    public static CreatureType byName(String name) {
+        for (CreatureType type : table) {
+            if (type.name.equals(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown creature type " + name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public char getGlyph() {
+        return glyph;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public int getMaxHp() {
+        return maxHp;
+    }
+
+    public int getAttackValue() {
+        return attackValue;
+    }
+
+    public int getDefenseValue() {
+        return defenseValue;
+    }
+}
@@ -0,0 +1,263 @@
+package net.zn80.trystansroguelike;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+/**
+ * The levels of a dungeon, one world per depth, connected by stairs. A level is only generated when the player first
+ * goes down to it, from a seed derived from the seed of the dungeon and the depth, so the same seed always creates the
+ * same dungeon no matter in which order the levels are visited.
+ * <p>
+ * Only the level the player is on is played, see {@link Simulation}. The other levels are frozen: their creatures do not
+ * take turns. A level that stayed frozen for {@link #getIdleTicks()} turns is written to a file in a temporary
+ * directory, see {@link Snapshot}, and dropped from memory. When the player comes back, the file is mapped into memory
+ * again, which takes next to no time. So a deep dungeon only costs memory and time for the levels in play.
+ */
+public class Dungeon {
+
+    /**
+     * Spreads the seeds of the levels, the golden ratio as a 64 bit fraction.
+     */
+    private static final long DEPTH_SEED_STEP = 0x9e3779b97f4a7c15L;
+    /**
+     * Caves with fewer cells are filled, see {@link WorldBuilder#fillPockets(int)}.
+     */
+    private static final int MIN_CAVE_SIZE = 20;
+
+    private final long seed;
+    private final int width;
+    private final int height;
+    private final int fungi;
+    private final List<Level> levels = new ArrayList<>();
+    private long idleTicks = 200;
+    private Path directory;
+
+    /**
+     * A level of the dungeon. Once generated it is either in memory or in its file.
+     */
+    private static class Level {
+        World world;
+        Path file;
+        long frozenSince = -1;
+    }
+
+    /**
+     * Creates a dungeon of which no level has been generated yet.
+     *
+     * @param seed   the seed of the dungeon
+     * @param width  the width of every level
+     * @param height the height of every level
+     * @param fungi  the number of fungi on a new level
+     */
+    public Dungeon(long seed, int width, int height, int fungi) {
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        this.fungi = fungi;
+    }
+
+    /**
+     * Returns the level at the given depth, generating it or loading it from its file if needed. The first level is
+     * generated from the seed of the dungeon itself and has no stairs up.
+     *
+     * @param depth the depth of the level, 0 for the first level
+     * @return the level
+     * @throws IllegalArgumentException if the depth is negative
+     */
+    public World getLevel(int depth) {
+        return getLevel(depth, progress -> {
+        });
+    }
+
+    /**
+     * Returns the level at the given depth like {@link #getLevel(int)} and tells the listener how far the generation
+     * has come, see {@link WorldBuilder#onProgress}.
+     */
+    World getLevel(int depth, DoubleConsumer progressListener) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("There is no level above the first");
+        }
+        while (levels.size() <= depth) {
+            levels.add(new Level());
+        }
+        Level level = levels.get(depth);
+        if (level.world == null && level.file != null) {
+            level.world = Snapshot.loadLevel(level.file);
+        } else if (level.world == null) {
+            level.world = generate(depth, progressListener);
+        }
+        return level.world;
+    }
+
+    private World generate(int depth, DoubleConsumer progressListener) {
+        long levelSeed = seed + depth * DEPTH_SEED_STEP;
+        World world = new WorldBuilder(width, height, levelSeed).onProgress(progressListener).makeCaves()
+                .fillPockets(MIN_CAVE_SIZE).makeStairs(depth > 0, true).build();
+        new CreatureFactory(world).newFungi(fungi);
+        return world;
+    }
+
+    /**
+     * Puts a level read from a saved game into the dungeon, see {@link Snapshot}.
+     *
+     * @param depth       the depth of the level
+     * @param world       the level
+     * @param frozenSince the turn the player left the level, or -1 if the player is on it
+     */
+    void restoreLevel(int depth, World world, long frozenSince) {
+        while (levels.size() <= depth) {
+            levels.add(new Level());
+        }
+        Level level = levels.get(depth);
+        level.world = world;
+        level.frozenSince = frozenSince;
+    }
+
+    /**
+     * Returns the level at the given depth so that it can be saved with the game. A level that is in its file is read
+     * from it, but not kept in memory.
+     *
+     * @param depth the depth of the level
+     * @return the level, or null if it was never generated
+     */
+    World peekLevel(int depth) {
+        Level level = levels.get(depth);
+        if (level.world == null && level.file != null) {
+            return Snapshot.loadLevel(level.file);
+        }
+        return level.world;
+    }
+
+    /**
+     * Returns the turn the player left the level at the given depth.
+     *
+     * @param depth the depth of the level
+     * @return the turn, or -1 if the player is on the level or never was
+     */
+    long getFrozenSince(int depth) {
+        return levels.get(depth).frozenSince;
+    }
+
+    /**
+     * Returns the number of depths the dungeon reached so far, whether their levels were generated or not.
+     *
+     * @return the number of depths
+     */
+    int getDepthCount() {
+        return levels.size();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of fungi on a new level.
+     *
+     * @return the number of fungi
+     */
+    public int getFungi() {
+        return fungi;
+    }
+
+    /**
+     * Returns the number of levels generated so far.
+     *
+     * @return the number of levels
+     */
+    public int getGeneratedLevelCount() {
+        int count = 0;
+        for (Level level : levels) {
+            if (level.world != null || level.file != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether the level at the given depth is in memory.
+     *
+     * @param depth the depth of the level
+     * @return true if the level is in memory, false if it is in its file or was never generated
+     */
+    public boolean isInMemory(int depth) {
+        return depth < levels.size() && levels.get(depth).world != null;
+    }
+
+    public long getIdleTicks() {
+        return idleTicks;
+    }
+
+    /**
+     * Sets how many turns a level stays in memory after the player left it.
+     *
+     * @param idleTicks the number of turns
+     */
+    public void setIdleTicks(long idleTicks) {
+        this.idleTicks = idleTicks;
+    }
+
+    /**
+     * Freezes a level the player left.
+     *
+     * @param depth the depth of the level
+     * @param tick  the current turn
+     */
+    void freeze(int depth, long tick) {
+        levels.get(depth).frozenSince = tick;
+    }
+
+    /**
+     * Thaws a level the player entered, see {@link #getLevel(int)}.
+     *
+     * @param depth the depth of the level
+     */
+    void thaw(int depth) {
+        levels.get(depth).frozenSince = -1;
+    }
+
+    /**
+     * Writes the levels that have been frozen for long enough to their files and drops them from memory.
+     *
+     * @param tick the current turn
+     * @throws UncheckedIOException if a level can not be written
+     */
+    void pageOutIdleLevels(long tick) {
+        for (Level level : levels) {
+            if (level.world != null && level.frozenSince >= 0 && tick - level.frozenSince >= idleTicks) {
+                if (level.file == null) {
+                    level.file = directory().resolve("level-" + levels.indexOf(level) + ".trl");
+                    level.file.toFile().deleteOnExit();
+                }
+                Snapshot.saveLevel(level.world, level.file);
+                level.world = null;
+            }
+        }
+    }
+
+    private Path directory() {
+        if (directory == null) {
+            try {
+                directory = Files.createTempDirectory("trystansroguelike-levels");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            directory.toFile().deleteOnExit();
+        }
+        return directory;
+    }
+}
@@ -0,0 +1,154 @@
+package net.zn80.trystansroguelike;
+
+/**
+ * Something that happened in the world, published on the {@link EventBus} of the world. Events only hold the kind and
+ * a few numbers and references; the text shown to the player is built from them when it is displayed.
+ * <p>
+ * Events are reused by the bus once they are delivered, so subscribers must not keep them. Use {@link #copyFrom} to
+ * keep the contents.
+ */
+public class Event {
+
+    /**
+     * The kinds of events.
+     */
+    public enum Kind {
+        ATTACK,
+        DIE,
+        DIG,
+        SPAWN;
+
+        /**
+         * Returns the bit of this kind in a mask of kinds.
+         *
+         * @return the bit of this kind
+         */
+        public int mask() {
+            return 1 << ordinal();
+        }
+    }
+
+    private Kind kind;
+    private Creature actor;
+    private Creature target;
+    private int x;
+    private int y;
+    private int amount;
+
+    /**
+     * Sets all fields of the event.
+     *
+     * @param kind   the kind of the event
+     * @param actor  the creature that acted, or null for an event that sums up what the reader saw around it
+     * @param target the creature that was acted upon, or null
+     * @param x      the x-coordinate of the cell acted upon
+     * @param y      the y-coordinate of the cell acted upon
+     * @param amount the damage of an attack, the number of creatures of a summary, or 0
+     * @return this event
+     */
+    Event set(Kind kind, Creature actor, Creature target, int x, int y, int amount) {
+        this.kind = kind;
+        this.actor = actor;
+        this.target = target;
+        this.x = x;
+        this.y = y;
+        this.amount = amount;
+        return this;
+    }
+
+    /**
+     * Copies the fields of another event into this one.
+     *
+     * @param other the event to copy
+     * @return this event
+     */
+    public Event copyFrom(Event other) {
+        return set(other.kind, other.actor, other.target, other.x, other.y, other.amount);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Creature getActor() {
+        return actor;
+    }
+
+    public Creature getTarget() {
+        return target;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    /**
+     * Formats the event for the given reader. The actor itself reads the action in second person ("You attack"), every
+     * other reader reads it in third person ("The 'F' attacks").
+     *
+     * @param reader the creature the text is formatted for
+     * @return the formatted text
+     */
+    public String getText(Creature reader) {
+        if (actor == null) {
+            return getSummary();
+        }
+        String action = getAction();
+        if (reader == actor) {
+            return "You " + action + ".";
+        }
+        return "The '" + actor.getGlyph() + "' " + makeSecondPerson(action) + ".";
+    }
+
+    /**
+     * Returns the text of an event without an actor, which sums up what the reader saw happen around it, see
+     * {@link EventBus#publishSummary}.
+     */
+    private String getSummary() {
+        if (kind == Kind.SPAWN) {
+            return amount == 1 ? "A new creature appears." : amount + " new creatures appear.";
+        }
+        return kind.name().toLowerCase() + ".";
+    }
+
+    /**
+     * Returns the action in first person without a subject, for example "attack the 'F' for 3 damage".
+     */
+    private String getAction() {
+        switch (kind) {
+            case ATTACK:
+                return String.format("attack the '%s' for %d damage", target.getGlyph(), amount);
+            case DIE:
+                return "die";
+            case DIG:
+                return String.format("dig field %d.%d", x, y);
+            case SPAWN:
+                return "spawn a child";
+            default:
+                throw new IllegalStateException("Unknown event kind " + kind);
+        }
+    }
+
+    /**
+     * Takes a String of text and modifies the first word by adding an "s" at the end to make it second person. The
+     * modified String is returned.
+     *
+     * @param text the text to be modified
+     * @return the modified text with the first word in second-person form
+     */
+    private static String makeSecondPerson(String text) {
+        int space = text.indexOf(' ');
+        if (space < 0) {
+            return text + "s";
+        }
+        return text.substring(0, space) + "s" + text.substring(space);
+    }
+}
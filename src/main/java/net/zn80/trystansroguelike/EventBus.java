@@ -0,0 +1,191 @@
+package net.zn80.trystansroguelike;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Delivers the events of a world to the creatures that subscribed to them. A creature subscribes to the kinds of events
+ * it cares about and receives those that happen within {@link #RADIUS} cells of it, where it can see them, see
+ * {@link Creature#canSee(int, int)}. Most creatures do not subscribe at
+ * all, and an event nobody subscribed to costs nothing but a bit test.
+ * <p>
+ * The event objects are taken from a pool and returned to it after delivery, and the creatures an event goes to are
+ * gathered in lists that are kept for the next event, so publishing does not allocate.
+ */
+public class EventBus {
+
+    /**
+     * How far away from the actor a subscriber still receives an event.
+     */
+    public static final int RADIUS = 9;
+
+    private final World world;
+    private final List<Creature> subscribers = new ArrayList<>();
+    private final ArrayDeque<Event> pool = new ArrayDeque<>();
+    /**
+     * The creatures the events being delivered go to, one list per publish that is in progress, as handlers may publish
+     * events of their own. The lists are cleared after delivery and reused.
+     */
+    private final List<List<Creature>> recipients = new ArrayList<>();
+    private int depth;
+    private int subscribedKinds;
+
+    /**
+     * Creates a new bus for the given world.
+     *
+     * @param world the world whose events are published
+     */
+    public EventBus(World world) {
+        this.world = world;
+    }
+
+    /**
+     * Subscribes a creature to the given kinds of events. Subscribing again replaces the kinds.
+     *
+     * @param subscriber the creature to deliver the events to
+     * @param kinds      the kinds of events the creature cares about
+     */
+    public void subscribe(Creature subscriber, Set<Event.Kind> kinds) {
+        int mask = 0;
+        for (Event.Kind kind : kinds) {
+            mask |= kind.mask();
+        }
+        if (subscriber.getEventMask() == 0) {
+            subscribers.add(subscriber);
+        }
+        subscriber.setEventMask(mask);
+        subscribedKinds |= mask;
+    }
+
+    /**
+     * Removes the subscription of a creature, if it has one.
+     *
+     * @param subscriber the creature to remove
+     */
+    public void unsubscribe(Creature subscriber) {
+        if (subscriber.getEventMask() == 0) {
+            return;
+        }
+        subscribers.remove(subscriber);
+        subscriber.setEventMask(0);
+        subscribedKinds = 0;
+        for (Creature other : subscribers) {
+            subscribedKinds |= other.getEventMask();
+        }
+    }
+
+    /**
+     * Publishes an event to every subscriber of its kind near the actor. An event without an actor goes to every
+     * subscriber of its kind, see {@link #publishSummary} for events that sum up what happened at several cells.
+     *
+     * @param kind   the kind of the event
+     * @param actor  the creature that acted, or null
+     * @param target the creature that was acted upon, or null
+     * @param x      the x-coordinate of the cell acted upon
+     * @param y      the y-coordinate of the cell acted upon
+     * @param amount the damage of an attack, the number of creatures of a summary, or 0
+     */
+    public void publish(Event.Kind kind, Creature actor, Creature target, int x, int y, int amount) {
+        int bit = kind.mask();
+        if ((subscribedKinds & bit) == 0) {
+            return;
+        }
+
+        // Subscribers may publish events of their own while handling this one, so every delivery takes its own event
+        Event event = pool.isEmpty() ? new Event() : pool.pop();
+        event.set(kind, actor, target, x, y, amount);
+        if (depth == recipients.size()) {
+            recipients.add(new ArrayList<>());
+        }
+        List<Creature> list = recipients.get(depth++);
+        try {
+            if (actor == null || subscribers.size() < (2 * RADIUS + 1) * (2 * RADIUS + 1)) {
+                copySubscribers(list);
+            } else {
+                world.getCreaturesInRadius(actor.getX(), actor.getY(), RADIUS, list);
+            }
+            for (int i = 0; i < list.size(); i++) {
+                deliver(list.get(i), event, bit);
+            }
+        } finally {
+            list.clear();
+            depth--;
+            pool.push(event);
+        }
+    }
+
+    /**
+     * Publishes one event without an actor that sums up something that happened at several cells, like the spawns of a
+     * tick. Every subscriber of the kind is told how many of the cells it sees within {@link #RADIUS} cells of it, as
+     * the amount of the event, and subscribers that see none of them are not told at all.
+     *
+     * @param kind  the kind of the event
+     * @param cells the cells, as pairs of x- and y-coordinates
+     * @param count the number of cells
+     */
+    public void publishSummary(Event.Kind kind, int[] cells, int count) {
+        int bit = kind.mask();
+        if ((subscribedKinds & bit) == 0 || count == 0) {
+            return;
+        }
+        if (depth == recipients.size()) {
+            recipients.add(new ArrayList<>());
+        }
+        List<Creature> list = recipients.get(depth++);
+        try {
+            copySubscribers(list);
+            for (int i = 0; i < list.size(); i++) {
+                Creature subscriber = list.get(i);
+                if ((subscriber.getEventMask() & bit) == 0) {
+                    continue;
+                }
+                int seen = 0;
+                for (int cell = 0; cell < count; cell++) {
+                    int x = cells[2 * cell];
+                    int y = cells[2 * cell + 1];
+                    int dx = subscriber.getX() - x;
+                    int dy = subscriber.getY() - y;
+                    if (dx * dx + dy * dy <= RADIUS * RADIUS && subscriber.canSee(x, y)) {
+                        seen++;
+                    }
+                }
+                if (seen > 0) {
+                    Event event = pool.isEmpty() ? new Event() : pool.pop();
+                    subscriber.notify(event.set(kind, null, null, 0, 0, seen));
+                    pool.push(event);
+                }
+            }
+        } finally {
+            list.clear();
+            depth--;
+        }
+    }
+
+    /**
+     * Copies the subscribers into the given list, as a handler may unsubscribe a creature by killing it.
+     */
+    private void copySubscribers(List<Creature> list) {
+        for (int i = 0; i < subscribers.size(); i++) {
+            list.add(subscribers.get(i));
+        }
+    }
+
+    private void deliver(Creature subscriber, Event event, int bit) {
+        if ((subscriber.getEventMask() & bit) == 0) {
+            return;
+        }
+        if (event.getActor() == null) {
+            subscriber.notify(event);
+            return;
+        }
+        int actorX = event.getActor().getX();
+        int actorY = event.getActor().getY();
+        int dx = subscriber.getX() - actorX;
+        int dy = subscriber.getY() - actorY;
+        if (dx * dx + dy * dy <= RADIUS * RADIUS && subscriber.canSee(actorX, actorY)) {
+            subscriber.notify(event);
+        }
+    }
+}
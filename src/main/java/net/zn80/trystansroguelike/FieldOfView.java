@@ -0,0 +1,231 @@
+package net.zn80.trystansroguelike;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * What a creature sees: the cells within a radius around it that no wall hides, computed with recursive
+ * shadowcasting. The visible cells are kept in a bit set over the square around the viewer, which is reused for every
+ * computation. Every tile the viewer has seen is also remembered, so that the player can be shown the parts of the
+ * caves they explored before.
+ * <p>
+ * The field of view is only computed again when it is asked for and the viewer moved or a tile within the radius
+ * changed since the last computation. Asking is cheap otherwise. A renderer asks for the cells whose visibility changed
+ * since it last asked, see {@link #drainChangedCells(LongConsumer)}, and only draws those again.
+ */
+public class FieldOfView implements TileListener {
+
+    /**
+     * The transformations from the first octant into the eight octants: x multiplied by xx, y by xy and so on.
+     */
+    private static final int[][] OCTANTS = {
+            {1, 0, 0, -1, -1, 0, 0, 1},
+            {0, 1, -1, 0, 0, -1, 1, 0},
+            {0, 1, 1, 0, 0, -1, -1, 0},
+            {1, 0, 0, 1, -1, 0, 0, -1}
+    };
+
+    private final World world;
+    private final Creature viewer;
+    private final int radius;
+    private final int side;
+    private final long[] visible;
+    /**
+     * The visible cells as the last call to drainChangedCells saw them, in the square around drainedX and drainedY.
+     */
+    private final long[] drained;
+    private int drainedX;
+    private int drainedY;
+    /**
+     * The tile ordinals of the square around the viewer, copied from the world before each computation.
+     */
+    private final byte[] tiles;
+    /**
+     * The tiles the viewer has seen, by cell key, as tile ordinal plus one.
+     */
+    private final CellMap remembered = new CellMap();
+    private int centerX;
+    private int centerY;
+    private boolean stale = true;
+
+    /**
+     * Creates the field of view of a creature. It listens to the tiles of the world of the creature from now on, until
+     * it is closed.
+     *
+     * @param viewer the creature that sees
+     * @param radius how far the creature sees
+     */
+    public FieldOfView(Creature viewer, int radius) {
+        this.world = viewer.getWorld();
+        this.viewer = viewer;
+        this.radius = radius;
+        this.side = 2 * radius + 1;
+        this.visible = new long[(side * side + 63) / 64];
+        this.drained = new long[visible.length];
+        this.tiles = new byte[side * side];
+        world.addTileListener(this);
+    }
+
+    /**
+     * Returns whether the viewer sees the given cell.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     * @return true if the cell is visible
+     */
+    public boolean isVisible(int x, int y) {
+        update();
+        return isSet(visible, x - centerX, y - centerY);
+    }
+
+    /**
+     * Returns the tile the viewer saw at the given cell, the last time it saw the cell.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     * @return the remembered tile, or null if the viewer never saw the cell
+     */
+    public Tile getRememberedTile(int x, int y) {
+        update();
+        int ordinal = remembered.get(world.cellKey(x, y));
+        return ordinal == 0 ? null : Tile.fromOrdinal(ordinal - 1);
+    }
+
+    /**
+     * Passes every cell whose visibility changed since the last call to the consumer: the cells that came into view and
+     * the cells that went out of view. The first call passes every visible cell. Meant for one renderer, which draws
+     * the changes of the tiles themselves from {@link World#drainDirtyCells(LongConsumer)}.
+     *
+     * @param consumer receives the cell keys of the changed cells, see {@link World#cellKey(int, int)}
+     */
+    public void drainChangedCells(LongConsumer consumer) {
+        update();
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                int x = centerX + dx;
+                int y = centerY + dy;
+                if (isSet(visible, dx, dy) != isSet(drained, x - drainedX, y - drainedY)) {
+                    accept(consumer, x, y);
+                }
+            }
+        }
+        // The cells seen before that are outside of the square now went out of view
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                int x = drainedX + dx;
+                int y = drainedY + dy;
+                boolean inSquare = Math.abs(x - centerX) <= radius && Math.abs(y - centerY) <= radius;
+                if (!inSquare && isSet(drained, dx, dy)) {
+                    accept(consumer, x, y);
+                }
+            }
+        }
+        System.arraycopy(visible, 0, drained, 0, visible.length);
+        drainedX = centerX;
+        drainedY = centerY;
+    }
+
+    private boolean isSet(long[] bits, int dx, int dy) {
+        if (dx < -radius || dx > radius || dy < -radius || dy > radius) {
+            return false;
+        }
+        int bit = (dy + radius) * side + dx + radius;
+        return (bits[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    private void accept(LongConsumer consumer, int x, int y) {
+        if (x >= 0 && x < world.getWidth() && y >= 0 && y < world.getHeight()) {
+            consumer.accept(world.cellKey(x, y));
+        }
+    }
+
+    /**
+     * Stops listening to the tiles of the world, so that the world neither keeps this field of view nor tells it about
+     * changes any more. Call this when the viewer leaves the world for good.
+     */
+    public void close() {
+        world.removeTileListener(this);
+    }
+
+    @Override
+    public void tileChanged(int x, int y) {
+        if (Math.abs(x - centerX) <= radius && Math.abs(y - centerY) <= radius) {
+            stale = true;
+        }
+    }
+
+    /**
+     * Computes the field of view again if the viewer moved or a tile near it changed.
+     */
+    private void update() {
+        if (!stale && viewer.getX() == centerX && viewer.getY() == centerY) {
+            return;
+        }
+        centerX = viewer.getX();
+        centerY = viewer.getY();
+        stale = false;
+
+        Arrays.fill(visible, 0);
+        world.copyRegion(centerX - radius, centerY - radius, side, side, tiles, null, null);
+        see(0, 0);
+        for (int octant = 0; octant < 8; octant++) {
+            castLight(1, 1.0, 0.0, OCTANTS[0][octant], OCTANTS[1][octant], OCTANTS[2][octant], OCTANTS[3][octant]);
+        }
+    }
+
+    /**
+     * Scans the rows of one octant outwards from the given row, between the start and end slopes. A wall narrows the
+     * slopes of the rows behind it, the part of the row before the wall is scanned by a recursive call.
+     */
+    private void castLight(int row, double start, double end, int xx, int xy, int yx, int yy) {
+        if (start < end) {
+            return;
+        }
+        double newStart = 0;
+        for (int distance = row; distance <= radius; distance++) {
+            int dy = -distance;
+            boolean blocked = false;
+            for (int dx = -distance; dx <= 0; dx++) {
+                double leftSlope = (dx - 0.5) / (dy + 0.5);
+                double rightSlope = (dx + 0.5) / (dy - 0.5);
+                if (start < rightSlope) {
+                    continue;
+                } else if (end > leftSlope) {
+                    break;
+                }
+
+                int offsetX = dx * xx + dy * xy;
+                int offsetY = dx * yx + dy * yy;
+                if (dx * dx + dy * dy <= radius * radius) {
+                    see(offsetX, offsetY);
+                }
+                boolean opaque = !Tile.fromOrdinal(tiles[(offsetY + radius) * side + offsetX + radius]).isGround();
+                if (blocked) {
+                    if (opaque) {
+                        newStart = rightSlope;
+                    } else {
+                        blocked = false;
+                        start = newStart;
+                    }
+                } else if (opaque && distance < radius) {
+                    blocked = true;
+                    castLight(distance + 1, start, leftSlope, xx, xy, yx, yy);
+                    newStart = rightSlope;
+                }
+            }
+            if (blocked) {
+                break;
+            }
+        }
+    }
+
+    private void see(int dx, int dy) {
+        int bit = (dy + radius) * side + dx + radius;
+        visible[bit >>> 6] |= 1L << bit;
+        int x = centerX + dx;
+        int y = centerY + dy;
+        if (x >= 0 && x < world.getWidth() && y >= 0 && y < world.getHeight()) {
+            remembered.put(world.cellKey(x, y), tiles[bit] + 1);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package net.zn80.trystansroguelike;
+
+/**
+ * Keeps all tiles in memory in one flat, row-major array. The tile at (x, y) is found at index y * width + x.
+ */
+public class FlatTileStore implements TileStore {
+
+    private final int width;
+    private final int height;
+    private final byte[] tiles;
+
+    /**
+     * Creates a new store around the given tiles. The array is used as is, not copied.
+     *
+     * @param width  the width of the store
+     * @param height the height of the store
+     * @param tiles  the ordinals of the tiles, stored row-major
+     * @throws IllegalArgumentException if the length of the tiles array does not match the size of the store
+     */
+    public FlatTileStore(int width, int height, byte[] tiles) {
+        if (tiles.length != width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " tiles, got " + tiles.length);
+        }
+        this.width = width;
+        this.height = height;
+        this.tiles = tiles;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public byte get(int x, int y) {
+        return tiles[y * width + x];
+    }
+
+    @Override
+    public void set(int x, int y, byte ordinal) {
+        tiles[y * width + x] = ordinal;
+    }
+
+    @Override
+    public void copyRow(int x, int y, int length, byte[] dest, int offset) {
+        System.arraycopy(tiles, y * width + x, dest, offset, length);
+    }
+
+    /**
+     * Returns the array holding the tiles. Changes to the array change the store.
+     *
+     * @return the ordinals of the tiles, stored row-major
+     */
+    public byte[] getTiles() {
+        return tiles;
+    }
+}
@@ -0,0 +1,197 @@
+package net.zn80.trystansroguelike;
+
+import java.util.Arrays;
+
+/**
+ * The distances of the cells around a target creature to that creature, over ground tiles and in steps in any of the
+ * eight directions. A creature that hunts the target only has to step to the neighbouring cell with the smallest
+ * distance, see {@link #planStep(Creature)}, so any number of hunters share one computation instead of searching a
+ * path each.
+ * <p>
+ * The world computes its flow fields again at the start of each tick if their target moved, before the creatures plan
+ * their turns, see {@link World#getFlowField(Creature, int)}. During the tick the distances do not change except when a
+ * tile is dug out: the cells that are now closer to the target are updated on the spot, the rest of the field stays as
+ * it is.
+ */
+public class FlowField implements TileListener {
+
+    /**
+     * The distance of the cells from which the target can not be reached within the range of the field.
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int[] DX = {-1, 0, 1, -1, 1, -1, 0, 1};
+    private static final int[] DY = {-1, -1, -1, 0, 0, 1, 1, 1};
+
+    private final World world;
+    private final Creature target;
+    private final int range;
+    private final int side;
+    private final int[] distances;
+    /**
+     * The tile ordinals of the square of the field, copied from the world by {@link #refresh()} and kept up to date by
+     * {@link #tileChanged(int, int)}.
+     */
+    private final byte[] tiles;
+    private final int[] queue;
+    private int left;
+    private int top;
+    private boolean stale = true;
+
+    /**
+     * Creates an empty flow field toward the given creature. It is filled by the first {@link #refresh()}.
+     *
+     * @param world  the world of the target
+     * @param target the creature to find
+     * @param range  how far from the target the distances are known, in cells along either axis
+     */
+    FlowField(World world, Creature target, int range) {
+        this.world = world;
+        this.target = target;
+        this.range = range;
+        this.side = 2 * range + 1;
+        this.distances = new int[side * side];
+        this.tiles = new byte[side * side];
+        this.queue = new int[side * side];
+        Arrays.fill(distances, UNREACHABLE);
+    }
+
+    public Creature getTarget() {
+        return target;
+    }
+
+    public int getRange() {
+        return range;
+    }
+
+    /**
+     * Returns the number of steps from the given cell to the target.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     * @return the number of steps, or {@link #UNREACHABLE}
+     */
+    public int getDistance(int x, int y) {
+        int lx = x - left;
+        int ly = y - top;
+        if (lx < 0 || lx >= side || ly < 0 || ly >= side) {
+            return UNREACHABLE;
+        }
+        return distances[ly * side + lx];
+    }
+
+    /**
+     * Plans the next step of the given creature toward the target: an attack if the target is next to it, otherwise a
+     * move to the neighbouring cell closest to the target that the creature can enter. Safe to call while the turns are
+     * planned in parallel.
+     *
+     * @param creature the creature that hunts the target
+     * @return the intent, or null if the creature can not get any closer
+     */
+    public Intent planStep(Creature creature) {
+        int x = creature.getX();
+        int y = creature.getY();
+        int best = getDistance(x, y);
+        if (best == UNREACHABLE || !target.isInWorld()) {
+            return null;
+        }
+        int bestX = x;
+        int bestY = y;
+        for (int d = 0; d < DX.length; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (nx == target.getX() && ny == target.getY()) {
+                return Intent.attack(target);
+            }
+            int distance = getDistance(nx, ny);
+            if (distance < best && creature.canEnter(nx, ny)) {
+                best = distance;
+                bestX = nx;
+                bestY = ny;
+            }
+        }
+        return bestX == x && bestY == y ? null : Intent.moveTo(bestX, bestY);
+    }
+
+    /**
+     * Computes the distances again if the target moved or a tile turned into something that can not be walked on since
+     * the last computation. Called by the world between ticks.
+     */
+    void refresh() {
+        if (!target.isInWorld()) {
+            Arrays.fill(distances, UNREACHABLE);
+            return;
+        }
+        if (!stale && target.getX() == left + range && target.getY() == top + range) {
+            return;
+        }
+        left = target.getX() - range;
+        top = target.getY() - range;
+        stale = false;
+
+        // Every step costs the same, so Dijkstra's algorithm comes down to a breadth-first search
+        world.copyRegion(left, top, side, side, tiles, null, null);
+        Arrays.fill(distances, UNREACHABLE);
+        int start = range * side + range;
+        distances[start] = 0;
+        queue[0] = start;
+        spread(1);
+    }
+
+    /**
+     * Lowers the distance of a cell that was dug out to one more than its closest neighbour, and the distances of the
+     * cells behind it that are now closer to the target. Dug out cells only ever shorten paths, any other change makes
+     * the field wait for the next {@link #refresh()}.
+     */
+    @Override
+    public void tileChanged(int x, int y) {
+        int lx = x - left;
+        int ly = y - top;
+        if (stale || lx < 0 || lx >= side || ly < 0 || ly >= side) {
+            return;
+        }
+        Tile tile = world.getTile(x, y);
+        if (!tile.isGround()) {
+            stale = true;
+            return;
+        }
+        int cell = ly * side + lx;
+        tiles[cell] = (byte) tile.ordinal();
+        for (int d = 0; d < DX.length; d++) {
+            int nx = lx + DX[d];
+            int ny = ly + DY[d];
+            if (nx >= 0 && nx < side && ny >= 0 && ny < side && distances[ny * side + nx] != UNREACHABLE) {
+                distances[cell] = Math.min(distances[cell], distances[ny * side + nx] + 1);
+            }
+        }
+        if (distances[cell] != UNREACHABLE) {
+            queue[0] = cell;
+            spread(1);
+        }
+    }
+
+    /**
+     * Passes the distances of the queued cells on to their neighbours, as long as that makes the neighbours closer.
+     */
+    private void spread(int tail) {
+        for (int head = 0; head < tail; head++) {
+            int cell = queue[head];
+            int cx = cell % side;
+            int cy = cell / side;
+            int next = distances[cell] + 1;
+            for (int d = 0; d < DX.length; d++) {
+                int nx = cx + DX[d];
+                int ny = cy + DY[d];
+                if (nx < 0 || nx >= side || ny < 0 || ny >= side) {
+                    continue;
+                }
+                int n = ny * side + nx;
+                if (distances[n] <= next || !Tile.fromOrdinal(tiles[n]).isGround()) {
+                    continue;
+                }
+                distances[n] = next;
+                queue[tail++] = n;
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package net.zn80.trystansroguelike;
+
+import net.trystan.asciipanel.AsciiPanel;
+
+import java.awt.*;
+
+/**
+ * An AsciiPanel that the game loop draws into from its own thread. Drawing a frame and painting the panel both lock the
+ * panel, so Swing only ever paints finished frames.
+ */
+class FramePanel extends AsciiPanel {
+    private static final long serialVersionUID = 1L;
+
+    private final Runnable onPaint;
+
+    /**
+     * Creates a new panel.
+     *
+     * @param onPaint called on the Swing thread after every paint, while the panel is still locked
+     */
+    FramePanel(Runnable onPaint) {
+        this.onPaint = onPaint;
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        synchronized (this) {
+            super.paint(g);
+            onPaint.run();
+        }
+    }
+}
@@ -11,35 +11,58 @@ public class FungusAi extends CreatureAi {
     }
 
     /**
-     * Called when it's time for the fungus to take its turn. The fungus may reproduce and spread to an adjacent tile
-     * with a small chance of 2%, as long as it hasn't spread more than 5 times already.
+     * Called when it's time for the fungus to plan its turn. The fungus may reproduce and spread to a nearby tile with
+     * a small chance of 2%, as long as it hasn't spread more than 5 times already.
      */
     @Override
-    public void onTakeTurn() {
-        if (spreadCount < 5 && Math.random() < 0.02) {
-            reproduce();
+    public Intent planTurn() {
+        if (spreadCount < 5 && creature.getRng().nextDouble() < 0.02) {
+            return planReproduction();
         }
+        return null;
     }
 
     /**
-     * Creates a new fungus creature at a random location near the parent fungus creature. The new creature must be able
-     * to enter the tile at the selected location.
+     * Picks a random location near the parent fungus creature for a new fungus. The new creature must be able to enter
+     * the tile at the selected location.
+     *
+     * @return the intent to spawn a child, or null if the selected location can not be entered
      */
-    private void reproduce() {
+    private Intent planReproduction() {
         // Generate random coordinates within a 3-tile radius of the parent fungus
-        int x = creature.getX() + (int) (Math.random() * 11) - 3;
-        int y = creature.getY() + (int) (Math.random() * 11) - 3;
+        int x = creature.getX() + creature.getRng().nextInt(11) - 3;
+        int y = creature.getY() + creature.getRng().nextInt(11) - 3;
 
-        // Check if the new tile is valid for the new fungus
-        if (!creature.canEnter(x, y)) {
-            return;
+        // Check if the new tile is valid for the new fungus, the parent may enter its own tile but the child may not
+        if (!creature.canEnter(x, y) || (x == creature.getX() && y == creature.getY())) {
+            return null;
         }
+        return Intent.spawn(x, y);
+    }
+
+    /**
+     * Returns the number of times the fungus has spread.
+     *
+     * @return the spread count
+     */
+    @Override
+    public int getState() {
+        return spreadCount;
+    }
 
-        // Create a new fungus creature at the selected location
-        Creature child = factory.newFungus();
-        child.setX(x);
-        child.setY(y);
+    @Override
+    public void setState(int state) {
+        spreadCount = state;
+    }
+
+    /**
+     * Creates the child for an accepted spawn request. The world places it, so no empty location is searched for.
+     *
+     * @return the new fungus
+     */
+    @Override
+    public Creature createChild() {
         spreadCount++;
-        creature.doAction("spawn a child");
+        return factory.createFungus();
     }
 }
@@ -0,0 +1,263 @@
+package net.zn80.trystansroguelike;
+
+import net.trystan.asciipanel.AsciiPanel;
+import net.zn80.trystansroguelike.screens.AsciiPanelTarget;
+import net.zn80.trystansroguelike.screens.PlayScreen;
+import net.zn80.trystansroguelike.screens.RenderTarget;
+import net.zn80.trystansroguelike.screens.Screen;
+
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the game on its own thread, so that slow turns never block Swing. Key events are put into a lock-free queue by
+ * the Swing thread and taken out by the loop, which lets the current screen respond to them and then draws a frame.
+ * Finished frames are handed to Swing by locking the panel, see {@link FramePanel}.
+ * <p>
+ * When turns take longer than the keys come in, the keys pile up in the queue. The loop then takes all of them at once
+ * and drops the presses a key that is held down repeats, instead of playing every repeat after the player already let
+ * go. A key that is let go and pressed again is a press of its own and always kept, see {@link #dropRepeats(List)}.
+ * <p>
+ * A screen that throws while it responds to a key or draws a frame is logged and the loop goes on with the next key,
+ * so the window keeps responding.
+ * <p>
+ * The loop measures the latency from the moment a key was pressed to the moment the frame showing its result was
+ * painted.
+ */
+public class GameLoop {
+
+    private static final Logger LOGGER = Logger.getLogger(GameLoop.class.getName());
+
+    private final AsciiPanel terminal;
+    private final RenderTarget target;
+    private final ConcurrentLinkedQueue<QueuedKey> input = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean repaintRequested = new AtomicBoolean(true);
+    private final Thread thread;
+    private Screen screen;
+    private Screen displayedScreen;
+
+    // Written by the loop when a frame is published and read by Swing when it is painted
+    private volatile long unpaintedInputNanos;
+    private volatile long lastLatencyNanos;
+    private volatile long maxLatencyNanos;
+    private volatile long totalLatencyNanos;
+    private volatile long latencyCount;
+    private volatile long droppedKeys;
+
+    /**
+     * Creates a new game loop with its own panel, see {@link #getTerminal()}. The loop does not run until it is
+     * started.
+     *
+     * @param screen the first screen
+     */
+    public GameLoop(Screen screen) {
+        this.terminal = new FramePanel(this::framePainted);
+        this.target = new AsciiPanelTarget(terminal);
+        this.screen = screen;
+        this.thread = new Thread(this::run, "game-loop");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Returns the panel the loop draws into, to be added to the window.
+     *
+     * @return the panel
+     */
+    public AsciiPanel getTerminal() {
+        return terminal;
+    }
+
+    /**
+     * Starts the loop thread.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Queues a key event for the loop. May be called from any thread, usually the Swing thread.
+     *
+     * @param key the key event
+     */
+    public void submit(KeyEvent key) {
+        input.add(new QueuedKey(key, System.nanoTime()));
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Queues the release of a key, which tells the loop that the next press of the key is not a repeat. May be called
+     * from any thread, usually the Swing thread.
+     *
+     * @param key the key event
+     */
+    public void release(KeyEvent key) {
+        input.add(new QueuedKey(key, System.nanoTime()));
+    }
+
+    /**
+     * Asks the loop to draw a frame even if no key was pressed. May be called from any thread. Screens that do not
+     * change on their own, see {@link Screen#needsRepaint()}, ignore the request.
+     */
+    public void requestRepaint() {
+        repaintRequested.set(true);
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        List<QueuedKey> batch = new ArrayList<>();
+        while (true) {
+            QueuedKey key;
+            while ((key = input.poll()) != null) {
+                batch.add(key);
+            }
+            boolean repaint = repaintRequested.getAndSet(false);
+            if (batch.isEmpty() && !repaint) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            droppedKeys += dropRepeats(batch);
+            long oldestInput = 0;
+            for (QueuedKey queued : batch) {
+                if (oldestInput == 0) {
+                    oldestInput = queued.nanos;
+                }
+                try {
+                    screen = screen.respondToUserInput(queued.key);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "The screen failed to respond to a key", e);
+                }
+            }
+            batch.clear();
+
+            try {
+                if (oldestInput != 0 || screen != displayedScreen || screen.needsRepaint()) {
+                    drawFrame(oldestInput);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "The screen failed to draw a frame", e);
+            }
+        }
+    }
+
+    /**
+     * Removes the presses from a batch of keys that only repeat a key held down, and the releases, which are only needed
+     * to tell the two apart. A press right after a press of the same key, without a release in between, is such a
+     * repeat. Keys pressed again after they were let go are kept, however fast the player taps them.
+     *
+     * @param batch the presses and releases in the order they came in, left with the presses to respond to
+     * @return the number of repeats that were removed
+     */
+    static int dropRepeats(List<QueuedKey> batch) {
+        int dropped = 0;
+        int kept = 0;
+        QueuedKey previous = null;
+        for (QueuedKey queued : batch) {
+            boolean press = queued.key.getID() == KeyEvent.KEY_PRESSED;
+            boolean repeat = press && previous != null && previous.key.getID() == KeyEvent.KEY_PRESSED
+                    && previous.key.getKeyCode() == queued.key.getKeyCode();
+            previous = queued;
+            if (repeat) {
+                dropped++;
+            } else if (press) {
+                batch.set(kept++, queued);
+            }
+        }
+        batch.subList(kept, batch.size()).clear();
+        return dropped;
+    }
+
+    /**
+     * Draws the current screen into the panel and asks Swing to paint it. The AsciiPanel is only cleared when a
+     * different screen is shown than the last time, a screen that stays on display only redraws what changed.
+     */
+    private void drawFrame(long oldestInput) {
+        synchronized (terminal) {
+            if (screen != displayedScreen) {
+                target.clear();
+                if (screen instanceof PlayScreen) {
+                    ((PlayScreen) screen).invalidate();
+                }
+                displayedScreen = screen;
+            }
+            screen.displayOutput(target);
+            // Keep the oldest key that has not been painted yet, a frame may be replaced before Swing paints it
+            if (oldestInput != 0 && unpaintedInputNanos == 0) {
+                unpaintedInputNanos = oldestInput;
+            }
+        }
+        terminal.repaint();
+    }
+
+    /**
+     * Records the latency of the frame that was just painted. Called by the panel on the Swing thread.
+     */
+    private void framePainted() {
+        long input = unpaintedInputNanos;
+        if (input == 0) {
+            return;
+        }
+        unpaintedInputNanos = 0;
+        long latency = System.nanoTime() - input;
+        lastLatencyNanos = latency;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+        totalLatencyNanos += latency;
+        latencyCount++;
+    }
+
+    /**
+     * Returns the latency from a key press to the painted frame that shows its result, for the last such frame.
+     *
+     * @return the last latency in nanoseconds, 0 if no frame was painted after a key press yet
+     */
+    public long getLastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+
+    /**
+     * Returns the highest latency from a key press to the painted frame that shows its result.
+     *
+     * @return the highest latency in nanoseconds
+     */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /**
+     * Returns the average latency from a key press to the painted frame that shows its result.
+     *
+     * @return the average latency in nanoseconds, 0 if no frame was painted after a key press yet
+     */
+    public long getAverageLatencyNanos() {
+        long count = latencyCount;
+        return count == 0 ? 0 : totalLatencyNanos / count;
+    }
+
+    /**
+     * Returns the number of repeats of held keys that were dropped because the loop fell behind.
+     *
+     * @return the number of dropped keys
+     */
+    public long getDroppedKeys() {
+        return droppedKeys;
+    }
+
+    /**
+     * A key event and the time it was queued.
+     */
+    static class QueuedKey {
+        final KeyEvent key;
+        final long nanos;
+
+        QueuedKey(KeyEvent key, long nanos) {
+            this.key = key;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package net.zn80.trystansroguelike;
+
+/**
+ * The metrics of the game as seen from JMX, under the name {@code net.zn80.trystansroguelike:type=Metrics}. Only
+ * registered when the metrics are enabled, see {@link Metrics}. The rates are averages since the start or the last
+ * {@link #reset()}.
+ */
+public interface GameMetricsMXBean {
+
+    /**
+     * Returns the number of ticks per second of time spent in {@link World#updateCreatures()}.
+     *
+     * @return the ticks per second
+     */
+    double getTicksPerSecond();
+
+    /**
+     * Returns the number of ticks so far.
+     *
+     * @return the number of ticks
+     */
+    long getTicks();
+
+    /**
+     * Returns the number of creatures after the last tick.
+     *
+     * @return the number of creatures
+     */
+    int getCreatureCount();
+
+    /**
+     * Returns the number of creatures spawned per tick.
+     *
+     * @return the spawns per tick
+     */
+    double getSpawnsPerTick();
+
+    /**
+     * Returns the number of bytes all threads of the JVM allocated per tick, or -1 if the JVM does not measure
+     * allocation.
+     *
+     * @return the bytes per tick
+     */
+    double getAllocatedBytesPerTick();
+
+    /**
+     * Returns the 50th, 90th, 99th and 99.9th percentile and the maximum of every probe in microseconds, one line per
+     * probe, see {@link Metrics.Probe}.
+     *
+     * @return the percentiles of the probes
+     */
+    String[] getLatencies();
+
+    /**
+     * Forgets everything measured so far.
+     */
+    void reset();
+}
@@ -0,0 +1,79 @@
+package net.zn80.trystansroguelike;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of int items ordered by int priorities, without boxing. The arrays grow when needed and are kept
+ * when the heap is cleared, so that a heap that is reused does not allocate once it is large enough.
+ */
+class IntHeap {
+
+    private int[] items;
+    private int[] priorities;
+    private int size;
+
+    IntHeap(int capacity) {
+        items = new int[Math.max(1, capacity)];
+        priorities = new int[items.length];
+    }
+
+    void push(int item, int priority) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+            priorities = Arrays.copyOf(priorities, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (priorities[parent] <= priority) {
+                break;
+            }
+            items[i] = items[parent];
+            priorities[i] = priorities[parent];
+            i = parent;
+        }
+        items[i] = item;
+        priorities[i] = priority;
+    }
+
+    /**
+     * Returns the priority of the item {@link #pop()} would return next.
+     */
+    int peekPriority() {
+        return priorities[0];
+    }
+
+    int pop() {
+        int top = items[0];
+        size--;
+        int item = items[size];
+        int priority = priorities[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && priorities[child + 1] < priorities[child]) {
+                child++;
+            }
+            if (priority <= priorities[child]) {
+                break;
+            }
+            items[i] = items[child];
+            priorities[i] = priorities[child];
+            i = child;
+        }
+        items[i] = item;
+        priorities[i] = priority;
+        return top;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,96 @@
+package net.zn80.trystansroguelike;
+
+/**
+ * What a creature wants to do in its turn. Intents are planned by {@link CreatureAi#planTurn()} for all creatures at
+ * once, possibly in parallel, and then carried out one after another by {@link CreatureAi#carryOut(Intent)}. An intent
+ * may turn out to be impossible by the time it is carried out, for example because another creature moved into the
+ * target cell first, in which case it is dropped.
+ */
+public class Intent {
+
+    /**
+     * The kinds of intents.
+     */
+    public enum Kind {
+        MOVE,
+        ATTACK,
+        SPAWN,
+        DIG
+    }
+
+    private final Kind kind;
+    private final int x;
+    private final int y;
+    private final Creature target;
+
+    private Intent(Kind kind, int x, int y, Creature target) {
+        this.kind = kind;
+        this.x = x;
+        this.y = y;
+        this.target = target;
+    }
+
+    /**
+     * Creates an intent to move to the given cell.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     * @return the intent
+     */
+    public static Intent moveTo(int x, int y) {
+        return new Intent(Kind.MOVE, x, y, null);
+    }
+
+    /**
+     * Creates an intent to attack the given creature.
+     *
+     * @param target the creature to attack
+     * @return the intent
+     */
+    public static Intent attack(Creature target) {
+        return new Intent(Kind.ATTACK, target.getX(), target.getY(), target);
+    }
+
+    /**
+     * Creates an intent to spawn a child in the given cell.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     * @return the intent
+     */
+    public static Intent spawn(int x, int y) {
+        return new Intent(Kind.SPAWN, x, y, null);
+    }
+
+    /**
+     * Creates an intent to dig out the given cell.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     * @return the intent
+     */
+    public static Intent dig(int x, int y) {
+        return new Intent(Kind.DIG, x, y, null);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Returns the creature to attack.
+     *
+     * @return the creature to attack, or null if this is not an attack
+     */
+    public Creature getTarget() {
+        return target;
+    }
+}
@@ -0,0 +1,222 @@
+package net.zn80.trystansroguelike;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Records a game as the seed of its world and the command of the player in each turn, so that the game can be played
+ * again exactly as it happened, see {@link #replay(Path)}. Every {@link #CHECKPOINT_INTERVAL} turns the journal also
+ * records a checksum of the simulation, see {@link Simulation#checksum()}, which the replay compares with its own.
+ * <p>
+ * The journal is only ever appended to, and every turn is written through to the file, so it holds the game up to the
+ * last turn even when the game crashes. Version 3 replays games in a {@link Dungeon} without small caves. The layout
+ * of version 3, all numbers big-endian:
+ * <pre>
+ * int    magic "TRLJ"
+ * int    version
+ * long   seed
+ * int    width, height, fungi
+ * long   checksum at turn 0
+ * then per turn: byte command ordinal, see {@link Command}
+ * and after every checkpoint turn: byte -1, long turn, long checksum
+ * </pre>
+ */
+public class Journal implements Closeable {
+
+    private static final int MAGIC = 0x54524C4A;
+    private static final int VERSION = 3;
+    private static final int CHECKPOINT = -1;
+
+    /**
+     * The number of turns between two checksums.
+     */
+    public static final int CHECKPOINT_INTERVAL = 100;
+
+    /**
+     * The system property that switches recording on, naming the directory the games are recorded to, see
+     * {@link #forNewGame(Simulation)}.
+     */
+    public static final String DIRECTORY_PROPERTY = "trystansroguelike.journal";
+
+    private final DataOutputStream out;
+
+    private Journal(DataOutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Starts a journal for a simulation that has just been generated, replacing the file if it exists.
+     *
+     * @param file       the file to write
+     * @param simulation the simulation to record, see {@link Simulation#isGenerated()}
+     * @return the journal
+     * @throws IllegalArgumentException if the simulation was not generated from a seed or has advanced already
+     * @throws UncheckedIOException     if the file can not be written
+     */
+    public static Journal create(Path file, Simulation simulation) {
+        if (!simulation.isGenerated() || simulation.getTicks() != 0) {
+            throw new IllegalArgumentException("Only newly generated simulations can be recorded");
+        }
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(simulation.getSeed());
+            out.writeInt(simulation.getWorld().getWidth());
+            out.writeInt(simulation.getWorld().getHeight());
+            out.writeInt(simulation.getInitialFungi());
+            out.writeLong(simulation.checksum());
+            out.flush();
+            return new Journal(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Starts a journal for a game that was just generated, if the game runs with
+     * {@code -Dtrystansroguelike.journal=<directory>}. Every game is recorded to a file of its own in that directory,
+     * named after the seed, so a new game does not replace the recording of the last one.
+     *
+     * @param simulation the simulation of the new game
+     * @return the journal, or null if games are not recorded or the simulation was not newly generated
+     * @throws UncheckedIOException if the file can not be written
+     */
+    public static Journal forNewGame(Simulation simulation) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || !simulation.isGenerated() || simulation.getTicks() != 0) {
+            return null;
+        }
+        try {
+            Path file = Files.createDirectories(Paths.get(directory))
+                    .resolve("journal-" + Long.toHexString(simulation.getSeed()) + ".trj");
+            return create(file, simulation);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records the command the player gave in the turn the simulation just advanced, and the checksum of the simulation
+     * if the turn is a checkpoint.
+     *
+     * @param command    the command of the turn
+     * @param simulation the simulation after the turn
+     * @throws UncheckedIOException if the file can not be written
+     */
+    public void record(Command command, Simulation simulation) {
+        try {
+            out.writeByte(command.ordinal());
+            if (simulation.getTicks() % CHECKPOINT_INTERVAL == 0) {
+                out.writeByte(CHECKPOINT);
+                out.writeLong(simulation.getTicks());
+                out.writeLong(simulation.checksum());
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Generates the world of a recorded game again and plays the recorded commands as fast as possible, without a
+     * window. At every checkpoint the checksum of the simulation is compared with the recorded one. A journal that ends
+     * in the middle of a record, because the game crashed while writing it, is replayed up to the last complete one.
+     *
+     * @param file the journal to replay
+     * @return the simulation after the last recorded turn
+     * @throws IllegalArgumentException if the file is not a journal
+     * @throws IllegalStateException    if the replay does not reach the state that was recorded
+     * @throws UncheckedIOException     if the file can not be read
+     */
+    public static Simulation replay(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException(file + " is not a journal");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported journal version " + version);
+            }
+            long seed = in.readLong();
+            int width = in.readInt();
+            int height = in.readInt();
+            int fungi = in.readInt();
+            Simulation simulation = Simulation.create(seed, width, height, fungi);
+            verify(simulation, 0, in.readLong());
+
+            try {
+                for (int record = in.read(); record >= 0; record = in.read()) {
+                    if ((byte) record == CHECKPOINT) {
+                        long turn = in.readLong();
+                        long checksum = in.readLong();
+                        verify(simulation, turn, checksum);
+                        // Nobody reads the messages, drop them so that long replays do not fill up the memory
+                        simulation.getMessages().clear();
+                    } else {
+                        simulation.advance(1, Command.fromOrdinal(record));
+                    }
+                }
+            } catch (EOFException e) {
+                // The last record was cut off, the turns before it have been replayed
+            }
+            return simulation;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void verify(Simulation simulation, long turn, long checksum) {
+        if (simulation.getTicks() != turn) {
+            throw new IllegalStateException(String.format("Checkpoint of turn %d found after turn %d", turn,
+                    simulation.getTicks()));
+        }
+        long actual = simulation.checksum();
+        if (actual != checksum) {
+            throw new IllegalStateException(String.format("Replay differs at turn %d: checksum %016x, recorded %016x",
+                    turn, actual, checksum));
+        }
+    }
+
+    /**
+     * Replays a recorded game and prints how fast it went. Usage: {@code Journal file [repetitions]}. Repeating the
+     * replay gives the JIT time to warm up for performance measurements.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length == 0) {
+            System.err.println("Usage: Journal file [repetitions]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        for (int i = 0; i < repetitions; i++) {
+            Simulation simulation = replay(file);
+            System.out.format("%d turns replayed, checksums match, %.0f turns/s%n", simulation.getTicks(),
+                    simulation.getTicksPerSecond());
+        }
+        if (Metrics.ENABLED) {
+            Metrics.report(System.out);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package net.zn80.trystansroguelike;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds with a fixed memory footprint, in the manner of HdrHistogram. Values below
+ * {@link #SUB_BUCKETS} are counted exactly. Above, every power of two is split into {@link #SUB_BUCKETS} buckets of
+ * equal width, so a percentile is off by at most about 3% of its value, from a nanosecond up to hundreds of years.
+ * <p>
+ * Recording takes a few atomic increments and never allocates, and several threads may record at the same time, for
+ * example while the turns of the creatures are planned in parallel.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos the duration in nanoseconds, negative durations count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        total.add(value);
+        long previous = max.get();
+        while (value > previous && !max.compareAndSet(previous, value)) {
+            previous = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return the number of durations
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of the recorded durations.
+     *
+     * @return the sum in nanoseconds
+     */
+    public long getTotalNanos() {
+        return total.sum();
+    }
+
+    /**
+     * Returns the mean of the recorded durations.
+     *
+     * @return the mean in nanoseconds, or 0 if nothing was recorded
+     */
+    public double getMeanNanos() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getTotalNanos() / n;
+    }
+
+    /**
+     * Returns the longest recorded duration.
+     *
+     * @return the maximum in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Returns the duration that the given percentage of the recorded durations do not exceed, rounded up to the upper
+     * end of its bucket.
+     *
+     * @param percentile the percentage, between 0 and 100
+     * @return the duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = getCount();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(lowestValueAt(i + 1) - 1, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Forgets all recorded durations. Durations recorded at the same time may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long lowestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        // The bucket after the last one starts beyond the largest long
+        return lowest < 0 ? Long.MAX_VALUE : lowest;
+    }
+}
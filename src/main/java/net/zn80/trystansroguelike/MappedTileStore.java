@@ -0,0 +1,67 @@
+package net.zn80.trystansroguelike;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the tiles in a byte buffer, usually a file mapped into memory by {@link Snapshot#load}. The tiles are stored
+ * row-major like in a {@link FlatTileStore}, but they are read from the buffer directly, so loading a large world
+ * does not copy its tiles.
+ */
+public class MappedTileStore implements TileStore {
+
+    private final int width;
+    private final int height;
+    private ByteBuffer tiles;
+
+    /**
+     * Creates a new store around the given buffer. The tile at (x, y) is read at index y * width + x of the buffer,
+     * counted from the start of the buffer. Changed tiles are written into the buffer; a read-only buffer is copied
+     * into memory the first time a tile changes.
+     *
+     * @param width  the width of the store
+     * @param height the height of the store
+     * @param tiles  the ordinals of the tiles, stored row-major
+     * @throws IllegalArgumentException if the buffer holds fewer tiles than the store
+     */
+    public MappedTileStore(int width, int height, ByteBuffer tiles) {
+        if (tiles.capacity() < (long) width * height) {
+            throw new IllegalArgumentException("Expected " + (long) width * height + " tiles, got " + tiles.capacity());
+        }
+        this.width = width;
+        this.height = height;
+        this.tiles = tiles;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public byte get(int x, int y) {
+        return tiles.get(y * width + x);
+    }
+
+    @Override
+    public void set(int x, int y, byte ordinal) {
+        if (tiles.isReadOnly()) {
+            ByteBuffer copy = ByteBuffer.allocate(width * height);
+            copy.put(tiles.duplicate().limit(width * height));
+            tiles = copy;
+        }
+        tiles.put(y * width + x, ordinal);
+    }
+
+    @Override
+    public void copyRow(int x, int y, int length, byte[] dest, int offset) {
+        // Read through a view, so that the position of the shared buffer never changes
+        ByteBuffer view = tiles.duplicate();
+        view.position(y * width + x);
+        view.get(dest, offset, length);
+    }
+}
@@ -0,0 +1,83 @@
+package net.zn80.trystansroguelike;
+
+import java.util.Arrays;
+
+/**
+ * The messages waiting to be shown to the player. The log keeps copies of the events the player received and only
+ * turns them into text when they are displayed. The copies are reused after the log is cleared. Messages that are not
+ * about an event, like the outcome of saving the game, are kept as text.
+ */
+public class MessageLog {
+
+    private Event[] events = new Event[8];
+    private Creature[] readers = new Creature[8];
+    private String[] texts = new String[8];
+    private int size;
+
+    /**
+     * Adds a copy of an event to the log.
+     *
+     * @param event  the event to add
+     * @param reader the creature the text is formatted for
+     */
+    public void add(Event event, Creature reader) {
+        grow();
+        if (events[size] == null) {
+            events[size] = new Event();
+        }
+        events[size].copyFrom(event);
+        readers[size] = reader;
+        size++;
+    }
+
+    /**
+     * Adds a message that is not about an event to the log.
+     *
+     * @param text the text of the message
+     */
+    public void add(String text) {
+        grow();
+        texts[size] = text;
+        size++;
+    }
+
+    private void grow() {
+        if (size == events.length) {
+            events = Arrays.copyOf(events, size * 2);
+            readers = Arrays.copyOf(readers, size * 2);
+            texts = Arrays.copyOf(texts, size * 2);
+        }
+    }
+
+    /**
+     * Returns the text of a message.
+     *
+     * @param index the index of the message, the oldest message has index 0
+     * @return the text of the message
+     */
+    public String getText(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Message " + index + " of " + size);
+        }
+        return texts[index] != null ? texts[index] : events[index].getText(readers[index]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all messages from the log.
+     */
+    public void clear() {
+        // Drop the references to the creatures, so that dead creatures can be collected
+        for (int i = 0; i < size; i++) {
+            if (events[i] != null) {
+                events[i].set(null, null, null, 0, 0, 0);
+            }
+            readers[i] = null;
+            texts[i] = null;
+        }
+        size = 0;
+    }
+}
@@ -0,0 +1,309 @@
+package net.zn80.trystansroguelike;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures where the time of the game goes. The code of the game wraps its hot paths in probes:
+ * <pre>
+ * long start = Metrics.start();
+ * ...
+ * Metrics.stop(Metrics.Probe.DISPLAY_OUTPUT, start);
+ * </pre>
+ * Each probe has a {@link LatencyHistogram}, every tick is counted, and the figures are published as a JMX bean, see
+ * {@link GameMetricsMXBean}, and as JFR events in the category "Trystan's Roguelike". The events of single creatures
+ * are disabled in the default JFR settings, as there are so many of them.
+ * <p>
+ * The metrics are only collected when the game runs with {@code -Dtrystansroguelike.metrics=true}. Otherwise
+ * {@link #ENABLED} is a constant false, the JIT compiler drops the probes altogether and they cost nothing.
+ */
+public final class Metrics {
+
+    /**
+     * Whether the metrics are collected, set by the system property {@code trystansroguelike.metrics}.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("trystansroguelike.metrics");
+
+    /**
+     * The parts of the game that are measured.
+     */
+    public enum Probe {
+        MAKE_CAVES,
+        UPDATE_CREATURES,
+        PLAN_TURN,
+        CARRY_OUT,
+        DO_ACTION,
+        DISPLAY_OUTPUT
+    }
+
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[Probe.values().length];
+    private static final AtomicLong TICKS = new AtomicLong();
+    private static final AtomicLong SPAWNED = new AtomicLong();
+    private static volatile int creatureCount;
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new LatencyHistogram();
+        }
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new GameMetrics(),
+                        new ObjectName("net.zn80.trystansroguelike:type=Metrics"));
+            } catch (JMException e) {
+                throw new RuntimeException("Could not register the metrics bean", e);
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Starts a measurement.
+     *
+     * @return the start time to pass to {@link #stop}, or 0 if the metrics are disabled
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Ends a measurement of a part of the game that does not belong to a single creature.
+     *
+     * @param probe the part of the game that was measured
+     * @param start the value returned by {@link #start()}
+     */
+    public static void stop(Probe probe, long start) {
+        if (ENABLED) {
+            long nanos = System.nanoTime() - start;
+            HISTOGRAMS[probe.ordinal()].record(nanos);
+            ProbeEvent event = new ProbeEvent();
+            if (event.shouldCommit()) {
+                event.probe = probe.name();
+                event.elapsed = nanos;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Ends a measurement of something a single creature did, so that the JFR event can tell which AI took the time.
+     *
+     * @param probe    the part of the game that was measured
+     * @param start    the value returned by {@link #start()}
+     * @param creature the creature that acted
+     */
+    public static void stop(Probe probe, long start, Creature creature) {
+        if (ENABLED) {
+            long nanos = System.nanoTime() - start;
+            HISTOGRAMS[probe.ordinal()].record(nanos);
+            CreatureEvent event = new CreatureEvent();
+            if (event.shouldCommit()) {
+                event.probe = probe.name();
+                event.creatureType = creature.getType().getName();
+                event.ai = creature.getCreatureAi().getClass().getSimpleName();
+                event.elapsed = nanos;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Ends the measurement of a tick of a world and counts the tick.
+     *
+     * @param start     the value returned by {@link #start()} at the start of the tick
+     * @param creatures the number of creatures after the tick
+     * @param spawned   the number of creatures spawned during the tick
+     */
+    public static void tick(long start, int creatures, int spawned) {
+        if (ENABLED) {
+            long nanos = System.nanoTime() - start;
+            HISTOGRAMS[Probe.UPDATE_CREATURES.ordinal()].record(nanos);
+            TICKS.incrementAndGet();
+            SPAWNED.addAndGet(spawned);
+            creatureCount = creatures;
+            TickEvent event = new TickEvent();
+            if (event.shouldCommit()) {
+                event.creatures = creatures;
+                event.spawned = spawned;
+                event.elapsed = nanos;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Returns the histogram of a probe.
+     *
+     * @param probe the probe
+     * @return the histogram, which stays empty while the metrics are disabled
+     */
+    public static LatencyHistogram getHistogram(Probe probe) {
+        return HISTOGRAMS[probe.ordinal()];
+    }
+
+    /**
+     * Prints the percentiles of every probe that measured anything, see {@link GameMetricsMXBean#getLatencies()}.
+     *
+     * @param out the stream to print to
+     */
+    public static void report(PrintStream out) {
+        for (String line : latencies()) {
+            out.println(line);
+        }
+    }
+
+    private static String[] latencies() {
+        List<String> lines = new ArrayList<>();
+        for (Probe probe : Probe.values()) {
+            LatencyHistogram histogram = getHistogram(probe);
+            if (histogram.getCount() > 0) {
+                lines.add(String.format("%-16s n=%d p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f us", probe,
+                        histogram.getCount(), histogram.getValueAtPercentile(50) / 1e3,
+                        histogram.getValueAtPercentile(90) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+                        histogram.getValueAtPercentile(99.9) / 1e3, histogram.getMaxNanos() / 1e3));
+            }
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * The JMX view of the metrics. Allocation is not measured per tick, the bean asks the JVM how much all threads
+     * allocated when it is read.
+     */
+    private static class GameMetrics implements GameMetricsMXBean {
+
+        private long allocatedAtReset = allocatedBytes();
+        private long ticksAtReset;
+        private long spawnedAtReset;
+
+        @Override
+        public double getTicksPerSecond() {
+            LatencyHistogram ticks = getHistogram(Probe.UPDATE_CREATURES);
+            return ticks.getTotalNanos() == 0 ? 0 : ticks.getCount() * 1e9 / ticks.getTotalNanos();
+        }
+
+        @Override
+        public long getTicks() {
+            return TICKS.get();
+        }
+
+        @Override
+        public int getCreatureCount() {
+            return creatureCount;
+        }
+
+        @Override
+        public synchronized double getSpawnsPerTick() {
+            long ticks = TICKS.get() - ticksAtReset;
+            return ticks == 0 ? 0 : (double) (SPAWNED.get() - spawnedAtReset) / ticks;
+        }
+
+        @Override
+        public synchronized double getAllocatedBytesPerTick() {
+            long allocated = allocatedBytes();
+            long ticks = TICKS.get() - ticksAtReset;
+            if (allocated < 0) {
+                return -1;
+            }
+            // Threads that ended take their allocations with them, the sum may even shrink
+            return ticks == 0 ? 0 : (double) Math.max(0, allocated - allocatedAtReset) / ticks;
+        }
+
+        @Override
+        public String[] getLatencies() {
+            return latencies();
+        }
+
+        @Override
+        public synchronized void reset() {
+            for (LatencyHistogram histogram : HISTOGRAMS) {
+                histogram.reset();
+            }
+            allocatedAtReset = allocatedBytes();
+            ticksAtReset = TICKS.get();
+            spawnedAtReset = SPAWNED.get();
+        }
+
+        /**
+         * Returns the number of bytes the live threads allocated so far, or -1 if the JVM can not tell.
+         */
+        private static long allocatedBytes() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+                return -1;
+            }
+            long sum = 0;
+            for (long allocated : ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                sum += Math.max(0, allocated);
+            }
+            return sum;
+        }
+    }
+
+    // The events are created when a measurement ends, so the time measured is a field of its own instead of the
+    // duration JFR would measure between begin() and end()
+    @Name("net.zn80.trystansroguelike.Probe")
+    @Label("Probe")
+    @Category("Trystan's Roguelike")
+    @Description("A measured part of the game")
+    static class ProbeEvent extends Event {
+        @Label("Probe")
+        String probe;
+
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    @Name("net.zn80.trystansroguelike.Creature")
+    @Label("Creature")
+    @Category("Trystan's Roguelike")
+    @Description("Something a single creature did, like planning its turn")
+    @Enabled(false)
+    static class CreatureEvent extends Event {
+        @Label("Probe")
+        String probe;
+
+        @Label("Creature Type")
+        String creatureType;
+
+        @Label("AI")
+        String ai;
+
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    @Name("net.zn80.trystansroguelike.Tick")
+    @Label("Tick")
+    @Category("Trystan's Roguelike")
+    @Description("A turn of all creatures of a world")
+    static class TickEvent extends Event {
+        @Label("Creatures")
+        int creatures;
+
+        @Label("Spawned")
+        int spawned;
+
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+}
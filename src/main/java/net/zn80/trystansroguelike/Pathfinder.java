@@ -0,0 +1,147 @@
+package net.zn80.trystansroguelike;
+
+import java.util.Arrays;
+
+/**
+ * Finds shortest paths over the ground tiles of a world with A*. Creatures move one cell in any of the eight directions
+ * per turn, so every step costs 1 and the heuristic is the Chebyshev distance. Other creatures are not obstacles, they
+ * move before the path is walked anyway.
+ * <p>
+ * A search only looks at the square of cells within a fixed range around the start. The tiles of the square are copied
+ * from the world in one go, see {@link World#copyRegion}. The scores of the square are kept in arrays that are allocated
+ * once and marked with the number of the search that wrote them, so that a search neither allocates nor clears
+ * anything. A pathfinder is not thread-safe, use {@link World#getPathfinder()} to get the one of
+ * the current thread.
+ */
+public class Pathfinder {
+
+    private static final int[] DX = {-1, 0, 1, -1, 1, -1, 0, 1};
+    private static final int[] DY = {-1, -1, -1, 0, 0, 1, 1, 1};
+
+    private final World world;
+    private final int range;
+    private final int side;
+    private final int[] cost;
+    private final int[] parent;
+    private final int[] stamps;
+    private final byte[] tiles;
+    private final IntHeap open;
+    private int stamp;
+
+    /**
+     * Creates a pathfinder for the given world.
+     *
+     * @param world the world to find paths in
+     * @param range how far from the start a path may lead, in cells along either axis
+     */
+    public Pathfinder(World world, int range) {
+        this.world = world;
+        this.range = range;
+        this.side = 2 * range + 1;
+        this.cost = new int[side * side];
+        this.parent = new int[side * side];
+        this.stamps = new int[side * side];
+        this.tiles = new byte[side * side];
+        this.open = new IntHeap(4 * side);
+    }
+
+    /**
+     * Finds a shortest path from one cell to another and writes its steps into the given arrays, starting with the
+     * first step after the start and ending with the goal. If the arrays are shorter than the path, only the first steps
+     * are written, so arrays of length 1 are enough to learn where to go next.
+     *
+     * @param fromX the x-coordinate of the start
+     * @param fromY the y-coordinate of the start
+     * @param toX   the x-coordinate of the goal
+     * @param toY   the y-coordinate of the goal
+     * @param xs    receives the x-coordinates of the steps
+     * @param ys    receives the y-coordinates of the steps
+     * @return the number of steps of the path, 0 if the start is the goal, or -1 if there is no path within range
+     */
+    public int findPath(int fromX, int fromY, int toX, int toY, int[] xs, int[] ys) {
+        if (Math.abs(toX - fromX) > range || Math.abs(toY - fromY) > range) {
+            return -1;
+        }
+        // A goal in another cave can not be reached, no need to search the whole square to find that out
+        int fromRegion = world.regionOf(fromX, fromY);
+        int toRegion = world.regionOf(toX, toY);
+        if (toRegion == 0 || fromRegion != 0 && fromRegion != toRegion) {
+            return -1;
+        }
+        if (fromX == toX && fromY == toY) {
+            return 0;
+        }
+        nextStamp();
+        int left = fromX - range;
+        int top = fromY - range;
+        world.copyRegion(left, top, side, side, tiles, null, null);
+        int goalX = toX - left;
+        int goalY = toY - top;
+        int goal = goalY * side + goalX;
+
+        int start = range * side + range;
+        stamps[start] = stamp;
+        cost[start] = 0;
+        parent[start] = -1;
+        open.clear();
+        open.push(start, distance(range, range, goalX, goalY));
+
+        while (!open.isEmpty()) {
+            int estimate = open.peekPriority();
+            int cell = open.pop();
+            int cx = cell % side;
+            int cy = cell / side;
+            // A cell is pushed again whenever a shorter way to it is found, skip the entries that were outdone
+            if (estimate > cost[cell] + distance(cx, cy, goalX, goalY)) {
+                continue;
+            }
+            if (cell == goal) {
+                return tracePath(goal, left, top, xs, ys);
+            }
+            int next = cost[cell] + 1;
+            for (int d = 0; d < DX.length; d++) {
+                int nx = cx + DX[d];
+                int ny = cy + DY[d];
+                if (nx < 0 || nx >= side || ny < 0 || ny >= side) {
+                    continue;
+                }
+                int n = ny * side + nx;
+                if (stamps[n] == stamp && cost[n] <= next) {
+                    continue;
+                }
+                if (!Tile.fromOrdinal(tiles[n]).isGround()) {
+                    continue;
+                }
+                stamps[n] = stamp;
+                cost[n] = next;
+                parent[n] = cell;
+                open.push(n, next + distance(nx, ny, goalX, goalY));
+            }
+        }
+        return -1;
+    }
+
+    private int tracePath(int goal, int left, int top, int[] xs, int[] ys) {
+        int length = cost[goal];
+        int step = length - 1;
+        for (int cell = goal; parent[cell] >= 0; cell = parent[cell], step--) {
+            if (step < xs.length && step < ys.length) {
+                xs[step] = left + cell % side;
+                ys[step] = top + cell / side;
+            }
+        }
+        return length;
+    }
+
+    private void nextStamp() {
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            stamp = 0;
+        }
+        stamp++;
+    }
+
+    private static int distance(int x1, int y1, int x2, int y2) {
+        return Math.max(Math.abs(x1 - x2), Math.abs(y1 - y2));
+    }
+}
@@ -1,9 +1,15 @@
 package net.zn80.trystansroguelike;
 
-import java.util.List;
+import java.util.EnumSet;
 
 public class PlayerAi extends CreatureAi {
-    private final List<String> messages;
+    /**
+     * How far the player sees.
+     */
+    private static final int VISION_RADIUS = 9;
+
+    private final MessageLog messages;
+    private final FieldOfView fieldOfView;
 
     /**
      * Constructs a new PlayerAi instance with the specified creature and message list. Instead of providing a getter
@@ -12,11 +18,13 @@ public class PlayerAi extends CreatureAi {
      * needed.
      *
      * @param creature the creature controlled by the AI
-     * @param messages the list of messages to display to the player
+     * @param messages the log of messages to display to the player
      */
-    public PlayerAi(Creature creature, List<String> messages) {
+    public PlayerAi(Creature creature, MessageLog messages) {
         super(creature);
         this.messages = messages;
+        this.fieldOfView = new FieldOfView(creature, VISION_RADIUS);
+        creature.subscribe(EnumSet.allOf(Event.Kind.class));
     }
 
 
@@ -30,8 +38,7 @@ public class PlayerAi extends CreatureAi {
     @Override
     public void OnEnter(int x, int y, Tile tile) {
         if (tile.isGround()) {
-            creature.setX(x);
-            creature.setY(y);
+            creature.setPosition(x, y);
         } else if (tile.isDiggable()) {
             creature.dig(x, y);
         }
@@ -39,13 +46,30 @@ public class PlayerAi extends CreatureAi {
 
 
     /**
-     * Receives a message and adds it to the message queue.
+     * Returns what the player sees and remembers.
+     *
+     * @return the field of view of the player
+     */
+    public FieldOfView getFieldOfView() {
+        return fieldOfView;
+    }
+
+    /**
+     * The player only sees the cells in its field of view, so it only hears about what happens there.
+     */
+    @Override
+    public boolean canSee(int x, int y) {
+        return fieldOfView.isVisible(x, y);
+    }
+
+    /**
+     * Receives an event and adds it to the message log. The text is only formatted when the log is displayed.
      *
-     * @param message the message to be added to the queue
+     * @param event the event to be added to the log
      */
     @Override
-    public void onNotify(String message) {
-        messages.add(message);
+    public void onEvent(Event event) {
+        messages.add(event, creature);
     }
 
 }
@@ -0,0 +1,40 @@
+package net.zn80.trystansroguelike;
+
+/**
+ * Decides what the player does in a turn of a {@link Simulation}. The interactive game moves the player according to
+ * the key that was pressed, headless runs use a scripted or random controller instead.
+ */
+public interface PlayerController {
+
+    /**
+     * Lets the player act once.
+     *
+     * @param player the player creature
+     */
+    void act(Creature player);
+
+    /**
+     * Returns a controller that lets the player stand still.
+     *
+     * @return the idle controller
+     */
+    static PlayerController idle() {
+        return player -> {
+        };
+    }
+
+    /**
+     * Returns a controller that moves the player one step in a random direction, using the player's own random number
+     * generator, so that runs with the same seed are the same.
+     *
+     * @return the random walk controller
+     */
+    static PlayerController randomWalk() {
+        return player -> {
+            int direction = player.getRng().nextInt(8);
+            // Skip the center of the 3x3 square, a player moving by 0/0 would attack itself
+            int cell = direction < 4 ? direction : direction + 1;
+            player.moveBy(cell % 3 - 1, cell / 3 - 1);
+        };
+    }
+}
@@ -0,0 +1,147 @@
+package net.zn80.trystansroguelike;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A seedable random number generator. It uses the SplitMix64 algorithm of {@link java.util.SplittableRandom}, so a
+ * generator can be split into independent streams: the world, every band of the world generator and every creature get
+ * their own stream. No generator is shared between threads, and the same seed always reproduces the same run.
+ * <p>
+ * A generator is not thread safe. Split a new one for every thread or task instead of sharing it.
+ */
+public class Rng {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long seed;
+    private final long gamma;
+
+    /**
+     * Creates a new generator from the given seed.
+     *
+     * @param seed the seed of the generator
+     */
+    public Rng(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * Restores a generator from its state, as returned by {@link #getSeed()} and {@link #getGamma()}. The restored
+     * generator continues with the same numbers as the generator the state was taken from.
+     *
+     * @param seed  the current seed of the generator
+     * @param gamma the gamma of the generator, which must be odd
+     * @throws IllegalArgumentException if the gamma is even
+     */
+    public Rng(long seed, long gamma) {
+        if ((gamma & 1) == 0) {
+            throw new IllegalArgumentException("gamma must be odd");
+        }
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Returns a seed for a new, unpredictable run.
+     *
+     * @return a random seed
+     */
+    public static long randomSeed() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    /**
+     * Splits off a new generator with its own stream of numbers. Splitting advances this generator, so the split
+     * streams only depend on the seed and the order in which they were split off.
+     *
+     * @return the new generator
+     */
+    public Rng split() {
+        return new Rng(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /**
+     * Returns the current seed, which changes with every number drawn. Together with the gamma it is the whole state of
+     * the generator.
+     *
+     * @return the current seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the gamma, the step the seed advances by with every number drawn. It never changes.
+     *
+     * @return the gamma
+     */
+    public long getGamma() {
+        return gamma;
+    }
+
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * Returns a random number between 0 (inclusive) and the bound (exclusive).
+     *
+     * @param bound the upper bound, must be positive
+     * @return the random number
+     * @throws IllegalArgumentException if the bound is not positive
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        // Lemire's multiply and shift, rejecting the few values that would make the result biased
+        long m = (nextLong() >>> 32) * bound;
+        if ((m & 0xffffffffL) < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while ((m & 0xffffffffL) < threshold) {
+                m = (nextLong() >>> 32) * bound;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+
+    /**
+     * Returns a random number between 0.0 (inclusive) and 1.0 (exclusive), like {@link Math#random()}.
+     *
+     * @return the random number
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Hashes a seed and a pair of coordinates into a random looking number, for generators that need the same random
+     * value for a cell no matter in which order the cells are visited.
+     *
+     * @param seed the seed
+     * @param x    the x-coordinate
+     * @param y    the y-coordinate
+     * @return the hash
+     */
+    static long hash(long seed, int x, int y) {
+        return mix64(mix64(seed + x * GOLDEN_GAMMA) + y * GOLDEN_GAMMA);
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        // Gammas with too few bit flips make poor streams, see SplittableRandom
+        return (Long.bitCount(z ^ (z >>> 1)) < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
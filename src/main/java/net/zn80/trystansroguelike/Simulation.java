@@ -0,0 +1,367 @@
+package net.zn80.trystansroguelike;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Runs the game without a window. The simulation owns the world, the player and the messages for the player, and
+ * advances the world turn by turn. Each turn the player acts through a {@link PlayerController}, then every creature
+ * takes its turn.
+ * <p>
+ * A generated simulation is a {@link Dungeon}: the world is the level the player is on, and it changes when the
+ * controller lets the player take the stairs, see {@link Creature#requestStairs(int)}. Only that level is advanced.
+ */
+public class Simulation {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Dungeon dungeon;
+    private World world;
+    private Creature player;
+    private int depth;
+    private final MessageLog messages;
+    private long ticks;
+    private long tickNanos;
+    private boolean generated;
+    private long seed;
+    private int initialFungi;
+
+    /**
+     * Creates a new simulation for an existing world.
+     *
+     * @param world    the world to simulate
+     * @param player   the player creature, which must belong to the world
+     * @param messages the log receiving the messages for the player
+     */
+    public Simulation(World world, Creature player, MessageLog messages) {
+        this(world, player, messages, 0);
+    }
+
+    /**
+     * Creates a simulation that continues after the given number of turns, for example from a snapshot.
+     *
+     * @param world    the world to simulate
+     * @param player   the player creature, which must belong to the world
+     * @param messages the log receiving the messages for the player
+     * @param ticks    the number of turns simulated before
+     */
+    public Simulation(World world, Creature player, MessageLog messages, long ticks) {
+        this(null, 0, world, player, messages, ticks);
+    }
+
+    /**
+     * Creates a simulation of a dungeon that continues after the given number of turns, for example from a snapshot.
+     *
+     * @param dungeon  the dungeon, or null if the simulation has a single world
+     * @param depth    the depth of the level the player is on
+     * @param world    the level the player is on
+     * @param player   the player creature, which must belong to the world
+     * @param messages the log receiving the messages for the player
+     * @param ticks    the number of turns simulated before
+     */
+    Simulation(Dungeon dungeon, int depth, World world, Creature player, MessageLog messages, long ticks) {
+        this.dungeon = dungeon;
+        this.depth = depth;
+        this.world = world;
+        this.player = player;
+        this.messages = messages;
+        this.ticks = ticks;
+    }
+
+    /**
+     * Generates a new world with caves, a player and the given number of fungi.
+     *
+     * @param seed   the seed of the world, the same seed always creates the same simulation
+     * @param width  the width of the world
+     * @param height the height of the world
+     * @param fungi  the number of fungi to create
+     * @return the new simulation
+     */
+    public static Simulation create(long seed, int width, int height, int fungi) {
+        return create(seed, width, height, fungi, progress -> {
+        });
+    }
+
+    /**
+     * Generates a new world like {@link #create(long, int, int, int)} and tells the listener how far the generation has
+     * come, as a fraction between 0 and 1, see {@link WorldBuilder#onProgress}.
+     *
+     * @param seed             the seed of the world, the same seed always creates the same simulation
+     * @param width            the width of the world
+     * @param height           the height of the world
+     * @param fungi            the number of fungi to create
+     * @param progressListener the listener
+     * @return the new simulation
+     */
+    public static Simulation create(long seed, int width, int height, int fungi, DoubleConsumer progressListener) {
+        Dungeon dungeon = new Dungeon(seed, width, height, fungi);
+        World world = dungeon.getLevel(0, progressListener);
+        MessageLog messages = new MessageLog();
+        Creature player = new CreatureFactory(world).newPlayer(messages);
+        Simulation simulation = new Simulation(dungeon, 0, world, player, messages, 0);
+        simulation.generated = true;
+        simulation.seed = seed;
+        simulation.initialFungi = fungi;
+        return simulation;
+    }
+
+    /**
+     * Creates a world whose tiles are generated chunk by chunk while the creatures move around, with a player and the
+     * given number of fungi. See {@link ChunkedTileStore}.
+     *
+     * @param seed      the seed of the world, the same seed always creates the same simulation
+     * @param width     the width of the world
+     * @param height    the height of the world
+     * @param fungi     the number of fungi to create
+     * @param maxMemory the maximum number of bytes the tiles in memory may take
+     * @return the new simulation
+     */
+    public static Simulation createChunked(long seed, int width, int height, int fungi, long maxMemory) {
+        Rng rng = new Rng(seed);
+        TileStore tiles = new ChunkedTileStore(width, height, rng.nextLong(), 64, maxMemory, null);
+        return populate(new World(tiles, rng.split()), fungi);
+    }
+
+    private static Simulation populate(World world, int fungi) {
+        MessageLog messages = new MessageLog();
+
+        CreatureFactory creatureFactory = new CreatureFactory(world);
+        Creature player = creatureFactory.newPlayer(messages);
+        creatureFactory.newFungi(fungi);
+        return new Simulation(world, player, messages);
+    }
+
+    /**
+     * Advances the simulation by the given number of turns.
+     *
+     * @param turns      the number of turns to advance
+     * @param controller decides what the player does in each turn
+     */
+    public void advance(int turns, PlayerController controller) {
+        long start = System.nanoTime();
+        for (int turn = 0; turn < turns; turn++) {
+            controller.act(player);
+            int stairs = player.takeStairsRequest();
+            if (stairs != 0) {
+                takeStairs(stairs);
+            }
+            world.updateCreatures();
+            ticks++;
+            if (dungeon != null) {
+                dungeon.pageOutIdleLevels(ticks);
+            }
+        }
+        tickNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Moves the player to the level above or below if it stands on the stairs leading there. The player arrives on the
+     * stairs leading back, or next to them if a creature stands there. The level left behind is frozen.
+     *
+     * @param direction 1 to go down, -1 to go up
+     * @return true if the player changed levels
+     */
+    private boolean takeStairs(int direction) {
+        Tile stairs = direction > 0 ? Tile.STAIRS_DOWN : Tile.STAIRS_UP;
+        if (dungeon == null || world.getTile(player.getX(), player.getY()) != stairs) {
+            return false;
+        }
+        World next = dungeon.getLevel(depth + direction);
+        long arrival = next.findTile(direction > 0 ? Tile.STAIRS_UP : Tile.STAIRS_DOWN);
+        if (arrival < 0) {
+            return false;
+        }
+
+        // Creatures belong to one world, the player continues as a new creature with the same state
+        Creature moved = new CreatureFactory(next).restore(CreatureFactory.PLAYER, player.getRng(), messages);
+        moved.modifyHp(player.getHp() - moved.getHp());
+        // The level left behind must not keep the field of view of the old player
+        getFieldOfView().close();
+        world.remove(player);
+        next.addNear(moved, (int) (arrival % next.getWidth()), (int) (arrival / next.getWidth()));
+
+        dungeon.freeze(depth, ticks);
+        depth += direction;
+        dungeon.thaw(depth);
+        world = next;
+        player = moved;
+        return true;
+    }
+
+    /**
+     * Returns the level the player is on.
+     *
+     * @return the world of the player
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Returns the dungeon of a generated simulation.
+     *
+     * @return the dungeon, or null if the simulation has a single world
+     */
+    public Dungeon getDungeon() {
+        return dungeon;
+    }
+
+    /**
+     * Returns the depth of the level the player is on, 0 for the first level.
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public Creature getPlayer() {
+        return player;
+    }
+
+    public MessageLog getMessages() {
+        return messages;
+    }
+
+    /**
+     * Returns what the player sees and remembers.
+     *
+     * @return the field of view of the player
+     */
+    public FieldOfView getFieldOfView() {
+        return ((PlayerAi) player.getCreatureAi()).getFieldOfView();
+    }
+
+    /**
+     * Returns whether the simulation was generated by {@link #create(long, int, int, int)}, so that the same seed, size
+     * and number of fungi create it again, see {@link Journal}.
+     *
+     * @return true if the simulation can be created again from its seed
+     */
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    /**
+     * Returns the seed the world was generated from, see {@link #isGenerated()}.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the number of fungi the simulation was generated with, see {@link #isGenerated()}.
+     *
+     * @return the number of fungi
+     */
+    public int getInitialFungi() {
+        return initialFungi;
+    }
+
+    /**
+     * Returns a checksum of the state of the simulation: the number of turns, the tiles, the generator of the world and
+     * every creature, in slot order, with its type, position, hit points, generator and AI state. Two simulations with
+     * the same checksum are in the same state, with a probability high enough to compare replays. Reads every tile,
+     * so it is meant for worlds that fit into memory.
+     *
+     * @return the checksum
+     */
+    public long checksum() {
+        long hash = mix(FNV_OFFSET, ticks);
+        hash = mix(hash, depth);
+        hash = mix(hash, world.getWidth());
+        hash = mix(hash, world.getHeight());
+        byte[] row = new byte[world.getWidth()];
+        for (int y = 0; y < world.getHeight(); y++) {
+            world.copyTileRow(0, y, row.length, row, 0);
+            for (byte tile : row) {
+                hash = mix(hash, tile);
+            }
+        }
+        hash = mix(hash, world.getRng().getSeed());
+        hash = mix(hash, world.getRng().getGamma());
+        hash = mix(hash, player.getSlot());
+        for (Creature creature : world.getCreatures()) {
+            hash = mix(hash, creature.getType().getId());
+            hash = mix(hash, creature.getX());
+            hash = mix(hash, creature.getY());
+            hash = mix(hash, creature.getHp());
+            hash = mix(hash, creature.getRng().getSeed());
+            hash = mix(hash, creature.getRng().getGamma());
+            hash = mix(hash, creature.getCreatureAi().getState());
+        }
+        return hash;
+    }
+
+    /**
+     * Adds a value to an FNV-1a hash, one byte at a time.
+     */
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash = (hash ^ (value & 0xff)) * FNV_PRIME;
+            value >>>= 8;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the number of turns the simulation has advanced so far.
+     *
+     * @return the number of turns
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the number of turns per second, measured over the time spent in {@link #advance}.
+     *
+     * @return the turns per second, or 0 if no turn has been simulated yet
+     */
+    public double getTicksPerSecond() {
+        return tickNanos == 0 ? 0 : ticks * 1e9 / tickNanos;
+    }
+
+    /**
+     * Runs a headless simulation with a randomly walking player and prints the throughput. Usage: {@code Simulation
+     * [turns] [seed] [width] [height] [fungi] [chunked]}. With a sixth argument of "chunked" the tiles are generated in
+     * chunks with at most 64 MB of tiles in memory.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int turns = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : Rng.randomSeed();
+        int width = args.length > 2 ? Integer.parseInt(args[2]) : 90;
+        int height = args.length > 3 ? Integer.parseInt(args[3]) : 31;
+        int fungi = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+
+        boolean chunked = args.length > 5 && args[5].equals("chunked");
+
+        Simulation simulation = chunked
+                ? createChunked(seed, width, height, fungi, 64L << 20)
+                : create(seed, width, height, fungi);
+        Creature player = simulation.getPlayer();
+        System.out.format("World seed %d, player %c added at %d/%d, %d creatures%n", seed, player.getGlyph(),
+                player.getX(), player.getY(), simulation.getWorld().getCreatures().size());
+        PlayerController controller = PlayerController.randomWalk();
+        int reportEvery = Math.max(1, turns / 10);
+        for (int done = 0; done < turns; done += reportEvery) {
+            simulation.advance(Math.min(reportEvery, turns - done), controller);
+            // Nobody reads the messages, drop them so that long runs do not fill up the memory
+            simulation.getMessages().clear();
+            System.out.format("%d turns, %d creatures, %.0f turns/s%n", simulation.getTicks(),
+                    simulation.getWorld().getCreatures().size(), simulation.getTicksPerSecond());
+        }
+        if (Metrics.ENABLED) {
+            Metrics.report(System.out);
+        }
+        if (chunked) {
+            // Delete the chunks that were dug into and spilled to disk
+            ((ChunkedTileStore) simulation.getWorld().getTileStore()).close();
+        }
+    }
+}
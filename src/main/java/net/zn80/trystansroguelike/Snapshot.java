@@ -0,0 +1,392 @@
+package net.zn80.trystansroguelike;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Saves a simulation to a binary file and loads it again. The file holds everything needed to continue the simulation
+ * exactly where it was saved: the tiles, every creature with its type, position, hit points, AI state and random
+ * number generator, the generator of the world and the number of turns. The game of a {@link Dungeon} is saved with all
+ * its levels, so that the player can still take the stairs after loading it.
+ * <p>
+ * The layout of version 2, all numbers big-endian:
+ * <pre>
+ * int    magic "TRLS"
+ * int    version
+ * then the level the player is on:
+ * int    width, height
+ * long   world rng seed, world rng gamma
+ * long   ticks, for a level of a dungeon nobody is on the turn the player left it
+ * int    slot of the player, -1 for a level of a dungeon nobody is on
+ * int    number of creature types, then per type: short length, UTF-8 name
+ * int    number of creatures
+ * byte[] width * height tile ordinals, row-major
+ * then per creature, in slot order: int type index, x, y, hp, long rng seed, rng gamma, int AI state
+ * then the dungeon:
+ * int    depth of the level the player is on, -1 if the game is not a dungeon, and for a dungeon:
+ * long   seed, int width, height, fungi, long idle ticks
+ * int    number of depths, then per depth other than the one of the player: byte 1 and the level as above, or byte 0
+ *        if it was never generated
+ * </pre>
+ * Loading maps the file into memory. The tiles stay in the mapping, see {@link MappedTileStore}, and are only copied
+ * when they are changed, so even a large world is ready almost at once. The file itself is never changed by the
+ * game.
+ */
+public class Snapshot {
+
+    private static final int MAGIC = 0x54524C53;
+    private static final int VERSION = 2;
+    private static final int CREATURE_BYTES = 4 * 4 + 2 * 8 + 4;
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * The file the game saves to.
+     */
+    public static final Path DEFAULT_FILE = Paths.get("savegame.trl");
+
+    private Snapshot() {
+    }
+
+    /**
+     * Writes the simulation to the given file, replacing the file if it exists. The file is replaced in one step, so it
+     * never holds half a snapshot. Only worlds whose tiles fit into one
+     * array can be saved, chunked worlds are too large. The game of a dungeon is saved with all its levels.
+     *
+     * @param simulation the simulation to save
+     * @param file       the file to write
+     * @throws IllegalArgumentException if the world is too large
+     * @throws UncheckedIOException     if the file can not be written
+     */
+    public static void save(Simulation simulation, Path file) {
+        write(simulation.getWorld(), simulation.getTicks(), simulation.getPlayer().getSlot(), simulation.getDungeon(),
+                simulation.getDepth(), file);
+    }
+
+    /**
+     * Writes a level of a dungeon that the player is not on, so that it can be dropped from memory, see
+     * {@link Dungeon}.
+     *
+     * @param world the level to save
+     * @param file  the file to write
+     * @throws IllegalArgumentException if the world is too large
+     * @throws UncheckedIOException     if the file can not be written
+     */
+    static void saveLevel(World world, Path file) {
+        write(world, 0, -1, null, 0, file);
+    }
+
+    private static void write(World world, long ticks, int playerSlot, Dungeon dungeon, int depth, Path file) {
+        checkSize(world);
+
+        // Write next to the file and replace it at the end, a loaded snapshot may still map the old file
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary;
+        try {
+            temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        boolean replaced = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+                block.putInt(MAGIC).putInt(VERSION);
+                writeLevel(channel, block, world, ticks, playerSlot);
+                if (dungeon == null) {
+                    block.putInt(-1);
+                } else {
+                    writeDungeon(channel, block, dungeon, depth);
+                }
+                writeFully(channel, block);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            replaced = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            // Do not leave half a snapshot behind
+            if (!replaced) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // The failure that got us here is the one to report
+                }
+            }
+        }
+    }
+
+    private static void checkSize(World world) {
+        long tileCount = (long) world.getWidth() * world.getHeight();
+        if (world.getTileStore() instanceof ChunkedTileStore || tileCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Only worlds with flat tiles can be saved");
+        }
+    }
+
+    /**
+     * Writes the other levels of a dungeon after the level the player is on. Levels that are in their files are read
+     * from them, see {@link Dungeon#peekLevel(int)}.
+     */
+    private static void writeDungeon(FileChannel channel, ByteBuffer block, Dungeon dungeon, int depth)
+            throws IOException {
+        block.putInt(depth);
+        block.putLong(dungeon.getSeed());
+        block.putInt(dungeon.getWidth()).putInt(dungeon.getHeight()).putInt(dungeon.getFungi());
+        block.putLong(dungeon.getIdleTicks());
+        block.putInt(dungeon.getDepthCount());
+        for (int other = 0; other < dungeon.getDepthCount(); other++) {
+            if (other == depth) {
+                continue;
+            }
+            World level = dungeon.peekLevel(other);
+            block.put((byte) (level == null ? 0 : 1));
+            if (level != null) {
+                checkSize(level);
+                writeLevel(channel, block, level, dungeon.getFrozenSince(other), -1);
+            }
+        }
+    }
+
+    /**
+     * Writes one level, its header, tiles and creatures, after what is in the block, and leaves the block empty.
+     */
+    private static void writeLevel(FileChannel channel, ByteBuffer block, World world, long ticks, int playerSlot)
+            throws IOException {
+        // Only the types of creatures that are in the world are written, in order of first appearance
+        List<Creature> creatures = world.getCreatures();
+        List<CreatureType> types = new ArrayList<>();
+        for (Creature creature : creatures) {
+            if (!types.contains(creature.getType())) {
+                types.add(creature.getType());
+            }
+        }
+
+        writeFully(channel, block);
+        block.putInt(world.getWidth()).putInt(world.getHeight());
+        block.putLong(world.getRng().getSeed()).putLong(world.getRng().getGamma());
+        block.putLong(ticks);
+        block.putInt(playerSlot);
+        block.putInt(types.size());
+        for (CreatureType type : types) {
+            byte[] name = type.getName().getBytes(StandardCharsets.UTF_8);
+            block.putShort((short) name.length).put(name);
+        }
+        block.putInt(creatures.size());
+        writeFully(channel, block);
+
+        writeTiles(channel, world.getTileStore(), block);
+
+        for (Creature creature : creatures) {
+            if (block.remaining() < CREATURE_BYTES) {
+                writeFully(channel, block);
+            }
+            block.putInt(types.indexOf(creature.getType()));
+            block.putInt(creature.getX()).putInt(creature.getY()).putInt(creature.getHp());
+            block.putLong(creature.getRng().getSeed()).putLong(creature.getRng().getGamma());
+            block.putInt(creature.getCreatureAi().getState());
+        }
+        writeFully(channel, block);
+    }
+
+    private static void writeTiles(FileChannel channel, TileStore tiles, ByteBuffer block) throws IOException {
+        if (tiles instanceof FlatTileStore) {
+            // The array can be written as it is
+            ByteBuffer all = ByteBuffer.wrap(((FlatTileStore) tiles).getTiles());
+            while (all.hasRemaining()) {
+                channel.write(all);
+            }
+            return;
+        }
+        int width = tiles.getWidth();
+        byte[] row = new byte[width];
+        for (int y = 0; y < tiles.getHeight(); y++) {
+            tiles.copyRow(0, y, width, row, 0);
+            int x = 0;
+            while (x < width) {
+                if (!block.hasRemaining()) {
+                    writeFully(channel, block);
+                }
+                int length = Math.min(block.remaining(), width - x);
+                block.put(row, x, length);
+                x += length;
+            }
+        }
+        writeFully(channel, block);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer block) throws IOException {
+        block.flip();
+        while (block.hasRemaining()) {
+            channel.write(block);
+        }
+        block.clear();
+    }
+
+    /**
+     * Loads a simulation from the given file. The game of a dungeon is loaded with all its levels.
+     *
+     * @param file the file to load
+     * @return the simulation, which continues exactly where the saved one stopped
+     * @throws IllegalArgumentException if the file is not a snapshot, has an unknown version or is larger than 2 GB
+     * @throws UncheckedIOException     if the file can not be read
+     */
+    public static Simulation load(Path file) {
+        ByteBuffer buffer = open(file);
+        Level level = readLevel(buffer);
+        if (level.player == null) {
+            throw new IllegalArgumentException(file + " has no player");
+        }
+        int depth = buffer.getInt();
+        Dungeon dungeon = null;
+        if (depth >= 0) {
+            dungeon = new Dungeon(buffer.getLong(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+            dungeon.setIdleTicks(buffer.getLong());
+            int depthCount = buffer.getInt();
+            for (int other = 0; other < depthCount; other++) {
+                if (other == depth) {
+                    dungeon.restoreLevel(other, level.world, -1);
+                } else if (buffer.get() != 0) {
+                    Level frozen = readLevel(buffer);
+                    dungeon.restoreLevel(other, frozen.world, frozen.ticks);
+                }
+            }
+        }
+        return new Simulation(dungeon, Math.max(depth, 0), level.world, level.player, level.messages, level.ticks);
+    }
+
+    /**
+     * Loads a level of a dungeon written by {@link #saveLevel}.
+     *
+     * @param file the file to load
+     * @return the level, with its tiles still mapped from the file
+     * @throws IllegalArgumentException if the file is not a snapshot or has an unknown version
+     * @throws UncheckedIOException     if the file can not be read
+     */
+    static World loadLevel(Path file) {
+        return readLevel(open(file)).world;
+    }
+
+    /**
+     * What a snapshot holds for one level.
+     */
+    private static class Level {
+        World world;
+        Creature player;
+        MessageLog messages;
+        long ticks;
+    }
+
+    /**
+     * Maps the file and checks its header, the returned buffer is at the first level.
+     */
+    private static ByteBuffer open(Path file) {
+        MappedByteBuffer buffer;
+        try {
+            buffer = map(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException(file + " is not a snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version " + version + " in " + file);
+        }
+        return buffer;
+    }
+
+    private static Level readLevel(ByteBuffer buffer) {
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        Rng rng = new Rng(buffer.getLong(), buffer.getLong());
+        long ticks = buffer.getLong();
+        int playerSlot = buffer.getInt();
+        CreatureType[] types = new CreatureType[buffer.getInt()];
+        for (int i = 0; i < types.length; i++) {
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            types[i] = CreatureType.byName(new String(name, StandardCharsets.UTF_8));
+        }
+        int creatureCount = buffer.getInt();
+
+        // The tiles stay where they are, the store reads them from the mapping
+        ByteBuffer tiles = buffer.slice();
+        tiles.limit(width * height);
+        buffer.position(buffer.position() + width * height);
+        World world = new World(new MappedTileStore(width, height, tiles.slice()), rng);
+
+        MessageLog messages = new MessageLog();
+        CreatureFactory factory = new CreatureFactory(world);
+        Creature player = null;
+        for (int slot = 0; slot < creatureCount; slot++) {
+            CreatureType type = types[buffer.getInt()];
+            int x = buffer.getInt();
+            int y = buffer.getInt();
+            int hp = buffer.getInt();
+            Creature creature = factory.restore(type, new Rng(buffer.getLong(), buffer.getLong()), messages);
+            creature.getCreatureAi().setState(buffer.getInt());
+            creature.modifyHp(hp - creature.getHp());
+            world.addAt(creature, x, y);
+            if (slot == playerSlot) {
+                player = creature;
+            }
+        }
+        Level level = new Level();
+        level.world = world;
+        level.player = player;
+        level.messages = messages;
+        level.ticks = ticks;
+        return level;
+    }
+
+    /**
+     * Maps the whole file into memory. A private mapping lets the game change tiles without writing them to the file,
+     * but needs a writable file; a file that is read-only is mapped read-only instead, and the tile store copies the
+     * tiles the first time one of them changes.
+     */
+    private static MappedByteBuffer map(Path file) throws IOException {
+        FileChannel.MapMode mode = Files.isWritable(file) ? FileChannel.MapMode.PRIVATE : FileChannel.MapMode.READ_ONLY;
+        Set<StandardOpenOption> options = mode == FileChannel.MapMode.PRIVATE
+                ? EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : EnumSet.of(StandardOpenOption.READ);
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Snapshot " + file + " is too large");
+            }
+            return channel.map(mode, 0, channel.size());
+        }
+    }
+
+    /**
+     * Generates a world and saves it, so that the game can load it instead of generating one at startup. Usage:
+     * {@code Snapshot file [seed] [width] [height] [fungi]}.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Path file = Paths.get(args[0]);
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : Rng.randomSeed();
+        int width = args.length > 2 ? Integer.parseInt(args[2]) : 90;
+        int height = args.length > 3 ? Integer.parseInt(args[3]) : 31;
+        int fungi = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+
+        long start = System.nanoTime();
+        save(Simulation.create(seed, width, height, fungi), file);
+        System.out.format("Saved %s in %d ms%n", file, (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -11,7 +11,12 @@ import java.awt.*;
 public enum Tile {
     FLOOR((char) 250, AsciiPanel.yellow),
     WALL((char) 177, AsciiPanel.yellow),
-    BOUNDS('x', AsciiPanel.brightBlack);
+    BOUNDS('x', AsciiPanel.brightBlack),
+    // Stored as ordinals in saved games, new tiles go to the end
+    STAIRS_DOWN('>', AsciiPanel.brightWhite),
+    STAIRS_UP('<', AsciiPanel.brightWhite);
+
+    private static final Tile[] VALUES = values();
 
     private Color color;
     private char glyph;
@@ -44,4 +49,15 @@ public enum Tile {
     public char getGlyph() {
         return glyph;
     }
+
+    /**
+     * Returns the tile with the given ordinal. This is the reverse of {@link #ordinal()} and is used to unpack tiles
+     * that are stored as bytes.
+     *
+     * @param ordinal the ordinal of the tile
+     * @return the tile with the given ordinal
+     */
+    public static Tile fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
 }
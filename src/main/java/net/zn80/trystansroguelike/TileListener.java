@@ -0,0 +1,16 @@
+package net.zn80.trystansroguelike;
+
+/**
+ * Is told when a tile of a {@link World} changes, for example because it was dug out. See
+ * {@link World#addTileListener(TileListener)}.
+ */
+public interface TileListener {
+
+    /**
+     * Called after the tile at the given coordinates changed.
+     *
+     * @param x the x-coordinate of the tile
+     * @param y the y-coordinate of the tile
+     */
+    void tileChanged(int x, int y);
+}
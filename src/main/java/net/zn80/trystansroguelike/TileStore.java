@@ -0,0 +1,41 @@
+package net.zn80.trystansroguelike;
+
+/**
+ * Holds the tiles of a {@link World} as tile ordinals, see {@link Tile#fromOrdinal(int)}. The world checks the bounds
+ * before it calls the store, so a store is only ever asked for cells inside of it.
+ */
+public interface TileStore {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Returns the ordinal of the tile at the given coordinates.
+     *
+     * @param x the x-coordinate of the tile
+     * @param y the y-coordinate of the tile
+     * @return the ordinal of the tile
+     */
+    byte get(int x, int y);
+
+    /**
+     * Replaces the tile at the given coordinates.
+     *
+     * @param x       the x-coordinate of the tile
+     * @param y       the y-coordinate of the tile
+     * @param ordinal the ordinal of the new tile
+     */
+    void set(int x, int y, byte ordinal);
+
+    /**
+     * Copies the ordinals of a horizontal run of tiles, which lies completely inside the store, into the given array.
+     *
+     * @param x      the x-coordinate of the first tile to copy
+     * @param y      the y-coordinate of the row to copy from
+     * @param length the number of tiles to copy
+     * @param dest   the array receiving the tile ordinals
+     * @param offset the index in the destination array of the first tile
+     */
+    void copyRow(int x, int y, int length, byte[] dest, int offset);
+}
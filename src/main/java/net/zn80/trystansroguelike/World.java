@@ -1,33 +1,223 @@
 /**
- * This is a Java code defining a World class that represents the game world in a roguelike game. The world is
- * represented by a two-dimensional array of Tile objects, and the class has methods to get the width and height of the
- * world.
+ * This is a Java code defining a World class that represents the game world in a roguelike game. The tiles of the world
+ * are kept by a {@link TileStore}, either all in one flat, row-major array or in chunks that are generated on demand,
+ * and the class has methods to get the width and height of the world.
  */
 package net.zn80.trystansroguelike;
 
 import java.awt.*;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 
 public class World {
 
-    private final Tile[][] tiles;
+    /**
+     * The most changed cells that are listed for the renderer before it is told to redraw everything.
+     */
+    private static final int MAX_DIRTY_CELLS = 1 << 16;
+    /**
+     * Worlds with fewer creatures plan their turns on the calling thread.
+     */
+    private static final int PARALLEL_PLANNING_THRESHOLD = 2048;
+    /**
+     * The width and height of the square regions whose population is counted, see {@link #getRegionPopulation}.
+     */
+    public static final int REGION_SIZE = 16;
+    /**
+     * How far the paths found by {@link #getPathfinder()} may lead, in cells along either axis.
+     */
+    public static final int PATH_RANGE = 32;
+    /**
+     * The glyphs and ARGB colors of the tiles by ordinal, see {@link #copyRegion}.
+     */
+    private static final char[] TILE_GLYPHS = new char[Tile.values().length];
+    private static final int[] TILE_COLORS = new int[Tile.values().length];
+
+    static {
+        for (Tile tile : Tile.values()) {
+            TILE_GLYPHS[tile.ordinal()] = tile.getGlyph();
+            TILE_COLORS[tile.ordinal()] = tile.getColor().getRGB();
+        }
+    }
+
+    private final TileStore tiles;
     private final int width;
     private final int height;
-    private List<Creature> creatures;
+    /**
+     * The creatures of the world, see {@link CreatureStore}. The slot of a creature in the store is also its number in
+     * the occupancy index.
+     */
+    private final CreatureStore creatures = new CreatureStore();
+    private final List<Creature> creatureView = new AbstractList<Creature>() {
+        @Override
+        public Creature get(int index) {
+            Objects.checkIndex(index, creatures.size());
+            return creatures.getHandle(index);
+        }
+
+        @Override
+        public int size() {
+            return creatures.size();
+        }
+    };
+    /**
+     * Occupancy index over the map, stored row-major. Each cell holds the slot of the creature standing on it plus
+     * one, so that zero means the cell is empty. Worlds with chunked tiles are too large for a grid and keep the
+     * occupied cells in occupantMap instead.
+     */
+    private final int[] occupants;
+    private final CellMap occupantMap;
+    /**
+     * Index of the empty ground cells, that is ground cells without a creature. The first freeCount entries of
+     * freeCells hold the empty cells in no particular order, and freePositions maps every cell to its entry in
+     * freeCells, or -1 if the cell is not empty. Only worlds with flat tiles have this index.
+     */
+    private final int[] freeCells;
+    private final int[] freePositions;
+    private int freeCount;
+    /**
+     * The number of creatures in each region, row-major by region. Worlds with chunked tiles keep the populated
+     * regions in regionPopulationMap instead.
+     */
+    private final int[] regionPopulation;
+    private final CellMap regionPopulationMap;
+    /**
+     * The connected regions of ground, see {@link #regionOf(int, int)}. Worlds with chunked tiles have none.
+     */
+    private final Connectivity connectivity;
+    private final int regionsPerRow;
+    private int regionCap = REGION_SIZE * REGION_SIZE / 4;
+    /**
+     * The spawns requested during the current tick, see {@link #requestSpawn}. Entry i asks spawnParents[i] for a
+     * child at spawnCells[2 * i], spawnCells[2 * i + 1].
+     */
+    private Creature[] spawnParents = new Creature[16];
+    private int[] spawnCells = new int[32];
+    private int spawnCount;
+    /**
+     * The cells that changed since the renderer last asked, as cell keys, see {@link #cellKey(int, int)}. Cells may be
+     * listed more than once. When too many cells changed, the list is dropped and allDirty is set instead.
+     */
+    private long[] dirtyCells;
+    private int dirtyCount;
+    private boolean allDirty;
+    private final Rng rng;
+    private final EventBus events = new EventBus(this);
+    private final List<TileListener> tileListeners = new ArrayList<>();
+    private final List<FlowField> flowFields = new ArrayList<>();
+    private final ThreadLocal<Pathfinder> pathfinders = ThreadLocal.withInitial(() -> new Pathfinder(this, PATH_RANGE));
+    private ForkJoinPool updatePool = ForkJoinPool.commonPool();
 
     /**
      * Constructs a new World object with the specified array of Tile objects.
      *
-     * @param tiles the two-dimensional array of Tile objects representing the game world
+     * @param tiles the two-dimensional array of Tile objects representing the game world, indexed by [x][y]
      * @throws NullPointerException           if the tiles array is null
      * @throws ArrayIndexOutOfBoundsException if the tiles array is not rectangular
      */
     public World(Tile[][] tiles) {
+        this(new FlatTileStore(tiles.length, tiles[0].length, pack(tiles)), new Rng(Rng.randomSeed()));
+    }
+
+    /**
+     * Constructs a new World object from packed tiles.
+     *
+     * @param width  the width of the world
+     * @param height the height of the world
+     * @param tiles  the ordinals of the tiles, stored row-major
+     * @param rng    the random number generator of the world, creatures split their own generators off it
+     * @throws IllegalArgumentException if the length of the tiles array does not match the size of the world
+     */
+    public World(int width, int height, byte[] tiles, Rng rng) {
+        this(new FlatTileStore(width, height, tiles), rng);
+    }
+
+    /**
+     * Constructs a new World object around the given tile store. A world with tiles that are all available, flat or
+     * mapped from a snapshot, keeps its creatures in a grid and indexes its empty cells. A world with chunked tiles keeps
+     * its creatures in a hash map and has no index of empty cells, as that would mean generating every chunk.
+     *
+     * @param tiles the tiles of the world
+     * @param rng   the random number generator of the world, creatures split their own generators off it
+     */
+    public World(TileStore tiles, Rng rng) {
         this.tiles = tiles;
-        this.width = tiles.length;
-        this.height = tiles[0].length;
-        creatures = new ArrayList<>();
+        this.width = tiles.getWidth();
+        this.height = tiles.getHeight();
+        this.regionsPerRow = (width + REGION_SIZE - 1) / REGION_SIZE;
+        if (!(tiles instanceof ChunkedTileStore)) {
+            occupants = new int[width * height];
+            occupantMap = null;
+            freeCells = new int[width * height];
+            freePositions = new int[width * height];
+            Arrays.fill(freePositions, -1);
+            regionPopulation = new int[regionsPerRow * ((height + REGION_SIZE - 1) / REGION_SIZE)];
+            regionPopulationMap = null;
+            byte[] row = new byte[width];
+            for (int y = 0; y < height; y++) {
+                tiles.copyRow(0, y, width, row, 0);
+                for (int x = 0; x < width; x++) {
+                    if (Tile.fromOrdinal(row[x]).isGround()) {
+                        addFreeCell(y * width + x);
+                    }
+                }
+            }
+            connectivity = new Connectivity(tiles);
+        } else {
+            occupants = null;
+            occupantMap = new CellMap();
+            freeCells = null;
+            freePositions = null;
+            regionPopulation = null;
+            regionPopulationMap = new CellMap();
+            connectivity = null;
+        }
+        this.dirtyCells = new long[64];
+        this.allDirty = true;
+        this.rng = rng;
+    }
+
+    /**
+     * Packs a column-major two-dimensional array of tiles into a row-major array of tile ordinals.
+     *
+     * @param tiles the tiles to pack, indexed by [x][y]
+     * @return the ordinals of the tiles, stored row-major
+     */
+    private static byte[] pack(Tile[][] tiles) {
+        int width = tiles.length;
+        int height = tiles[0].length;
+        byte[] packed = new byte[width * height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                packed[y * width + x] = (byte) tiles[x][y].ordinal();
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Returns the store that holds the tiles of this world.
+     *
+     * @return the tile store
+     */
+    TileStore getTileStore() {
+        return tiles;
+    }
+
+    /**
+     * Returns the random number generator of the world. It must only be used by the thread that updates the world.
+     *
+     * @return the random number generator of the world
+     */
+    public Rng getRng() {
+        return rng;
     }
 
     /**
@@ -52,12 +242,91 @@ public class World {
     public Tile getTile(int x, int y) {
         if (x >= 0 && x < width && y >= 0 && y < height) {
             // If the coordinates are within the bounds of the world, return the corresponding tile from the tiles array
-            return tiles[x][y];
+            return Tile.fromOrdinal(tiles.get(x, y));
         } else {
             return Tile.BOUNDS;
         }
     }
 
+    /**
+     * Copies the ordinals of a horizontal run of tiles into the given array. Cells outside of the world are filled with
+     * the ordinal of {@link Tile#BOUNDS}, so that callers can read a viewport without checking the bounds per cell.
+     *
+     * @param x      the x-coordinate of the first tile to copy
+     * @param y      the y-coordinate of the row to copy from
+     * @param length the number of tiles to copy
+     * @param dest   the array receiving the tile ordinals, see {@link Tile#fromOrdinal(int)}
+     * @param offset the index in the destination array of the first tile
+     */
+    public void copyTileRow(int x, int y, int length, byte[] dest, int offset) {
+        byte bounds = (byte) Tile.BOUNDS.ordinal();
+        if (y < 0 || y >= height) {
+            Arrays.fill(dest, offset, offset + length, bounds);
+            return;
+        }
+        int start = Math.max(x, 0);
+        int end = Math.min(x + length, width);
+        if (start >= end) {
+            Arrays.fill(dest, offset, offset + length, bounds);
+            return;
+        }
+        Arrays.fill(dest, offset, offset + start - x, bounds);
+        tiles.copyRow(start, y, end - start, dest, offset + start - x);
+        Arrays.fill(dest, offset + end - x, offset + length, bounds);
+    }
+
+    /**
+     * Copies a rectangle of the world into the given buffers, row-major with w cells per row: the tile ordinals, and if
+     * asked for, the glyph and ARGB color a renderer draws for each cell, which is the creature standing on it or else
+     * the tile. Cells outside of the world hold {@link Tile#BOUNDS}. The bounds are clamped once per row and nothing is
+     * allocated, so renderers, fields of view and AIs can read a whole area in one pass instead of looking up the tile
+     * and the creature of every cell on their own.
+     *
+     * @param left    the x-coordinate of the left edge of the rectangle
+     * @param top     the y-coordinate of the top edge of the rectangle
+     * @param w       the width of the rectangle
+     * @param h       the height of the rectangle
+     * @param tileBuf receives the tile ordinals, see {@link Tile#fromOrdinal(int)}, at least w * h long
+     * @param glyphs  receives the glyphs, or null if they are not needed
+     * @param colors  receives the colors as ARGB, or null if they are not needed
+     */
+    public void copyRegion(int left, int top, int w, int h, byte[] tileBuf, char[] glyphs, int[] colors) {
+        int from = Math.max(left, 0);
+        int to = Math.min(left + w, width);
+        for (int row = 0; row < h; row++) {
+            int y = top + row;
+            int offset = row * w;
+            copyTileRow(left, y, w, tileBuf, offset);
+            if (glyphs == null && colors == null) {
+                continue;
+            }
+            for (int i = offset; i < offset + w; i++) {
+                if (glyphs != null) {
+                    glyphs[i] = TILE_GLYPHS[tileBuf[i]];
+                }
+                if (colors != null) {
+                    colors[i] = TILE_COLORS[tileBuf[i]];
+                }
+            }
+            if (y < 0 || y >= height) {
+                continue;
+            }
+            for (int x = from; x < to; x++) {
+                int slot = occupantAt(x, y);
+                if (slot == 0) {
+                    continue;
+                }
+                CreatureType type = CreatureType.byId(creatures.getType(slot - 1));
+                if (glyphs != null) {
+                    glyphs[offset + x - left] = type.getGlyph();
+                }
+                if (colors != null) {
+                    colors[offset + x - left] = type.getColor().getRGB();
+                }
+            }
+        }
+    }
+
     /**
      * Gets the color of the tile at the given coordinates.
      *
@@ -96,33 +365,374 @@ public class World {
     public void dig(int x, int y) {
         Tile tile = getTile(x, y);
         if (tile.isDiggable()) {
-            tiles[x][y] = Tile.FLOOR;
+            tiles.set(x, y, (byte) Tile.FLOOR.ordinal());
+            if (freeCells != null && occupants[y * width + x] == 0) {
+                addFreeCell(y * width + x);
+            }
+            if (connectivity != null) {
+                connectivity.addGround(x, y);
+            }
+            markDirty(x, y);
+            for (TileListener listener : tileListeners) {
+                listener.tileChanged(x, y);
+            }
+        }
+    }
+
+    /**
+     * Returns the connected region of ground the given cell is in, see {@link Connectivity}. A creature can walk from
+     * one cell to another, digging aside, if and only if both are in the same region, so this tells in constant time
+     * whether looking for a path is worth it. Not to be confused with the square regions whose population is counted.
+     * Worlds with chunked tiles do not know their regions and put all ground in region 1.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     * @return the region, or 0 if the cell is not ground
+     */
+    public int regionOf(int x, int y) {
+        if (connectivity == null) {
+            return getTile(x, y).isGround() ? 1 : 0;
+        }
+        return connectivity.regionOf(x, y);
+    }
+
+    /**
+     * Returns the connected regions of ground of this world, with their sizes.
+     *
+     * @return the regions, or null if the world has chunked tiles
+     */
+    public Connectivity getConnectivity() {
+        return connectivity;
+    }
+
+    /**
+     * Adds a listener that is told about every tile that changes from now on.
+     *
+     * @param listener the listener
+     */
+    public void addTileListener(TileListener listener) {
+        tileListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addTileListener(TileListener)}.
+     *
+     * @param listener the listener
+     */
+    public void removeTileListener(TileListener listener) {
+        tileListeners.remove(listener);
+    }
+
+    /**
+     * Returns the pathfinder of the current thread, which finds paths of up to {@link #PATH_RANGE} cells along either
+     * axis. Creatures may use it while they plan their turns in parallel.
+     *
+     * @return the pathfinder of the current thread
+     */
+    public Pathfinder getPathfinder() {
+        return pathfinders.get();
+    }
+
+    /**
+     * Returns the flow field toward the given creature, creating it if no creature asked for it before. All creatures
+     * that hunt the same target share one field. The field is computed at the start of each tick, a field created during
+     * a tick stays empty until the next one. Fields whose target left the world are dropped.
+     *
+     * @param target the creature to find
+     * @param range  how far from the target the distances are known, in cells along either axis
+     * @return the flow field
+     */
+    public synchronized FlowField getFlowField(Creature target, int range) {
+        for (FlowField field : flowFields) {
+            if (field.getTarget() == target && field.getRange() == range) {
+                return field;
+            }
+        }
+        FlowField field = new FlowField(this, target, range);
+        flowFields.add(field);
+        addTileListener(field);
+        return field;
+    }
+
+    private void refreshFlowFields() {
+        for (int i = flowFields.size() - 1; i >= 0; i--) {
+            FlowField field = flowFields.get(i);
+            field.refresh();
+            if (!field.getTarget().isInWorld()) {
+                flowFields.remove(i);
+                removeTileListener(field);
+            }
         }
     }
 
     /**
-     * Adds the given creature to a random empty location on the world map.
+     * Adds the given creature to a random empty location on the world map. The location is picked from the index of
+     * empty cells, so this takes the same time no matter how crowded the world is. Worlds with chunked tiles have no
+     * such index and try random locations instead.
      *
      * @param creature The creature to be added to the world map.
-     * @throws RuntimeException if no empty location is found after 1000 attempts.
+     * @throws RuntimeException if there is no empty location left.
      */
     public void addAtEmptyLocation(Creature creature) {
-        int x;
-        int y;
-        // Keep generating random coordinates until an empty location is found
+        if (freeCells == null) {
+            addAtRandomLocation(creature);
+            return;
+        }
+        if (freeCount == 0) {
+            throw new RuntimeException("Could not find an empty location to add the creature.");
+        }
+        int cell = freeCells[rng.nextInt(freeCount)];
+        creature.setPosition(cell % width, cell / width);
+        add(creature);
+    }
+
+    /**
+     * Adds the given creature to a random empty location in the given region, see {@link #regionOf(int, int)}. Random
+     * empty cells are tried first, which takes a few tries for a large region. If they all miss, the empty cells are
+     * searched from a random one on. Worlds with chunked tiles ignore the region.
+     *
+     * @param creature the creature to add
+     * @param region   the region to add the creature in
+     * @throws RuntimeException if there is no empty location in the region
+     */
+    public void addAtEmptyLocation(Creature creature, int region) {
+        if (freeCells == null) {
+            addAtRandomLocation(creature);
+            return;
+        }
+        for (int i = 0; i < 64 && freeCount > 0; i++) {
+            int cell = freeCells[rng.nextInt(freeCount)];
+            if (connectivity.regionOf(cell % width, cell / width) == region) {
+                creature.setPosition(cell % width, cell / width);
+                add(creature);
+                return;
+            }
+        }
+        int start = freeCount > 0 ? rng.nextInt(freeCount) : 0;
+        for (int i = 0; i < freeCount; i++) {
+            int cell = freeCells[(start + i) % freeCount];
+            if (connectivity.regionOf(cell % width, cell / width) == region) {
+                creature.setPosition(cell % width, cell / width);
+                add(creature);
+                return;
+            }
+        }
+        throw new RuntimeException("Could not find an empty location in region " + region + ".");
+    }
+
+    /**
+     * Adds the given creature to the first of up to 1000 random locations that is empty.
+     *
+     * @param creature The creature to be added to the world map.
+     * @throws RuntimeException if no empty location is found after 1000 attempts.
+     */
+    private void addAtRandomLocation(Creature creature) {
         for (int i = 0; i < 1000; i++) {
-            x = (int) (Math.random() * width);
-            y = (int) (Math.random() * height);
+            int x = rng.nextInt(width);
+            int y = rng.nextInt(height);
             if (getTile(x, y).isGround() && getCreature(x, y) == null) {
-                creature.setX(x);
-                creature.setY(y);
-                creatures.add(creature);
+                creature.setPosition(x, y);
+                add(creature);
                 return;
             }
         }
         throw new RuntimeException("Could not find an empty location to add the creature.");
     }
 
+    /**
+     * Adds the given creature at the given location, for example when a saved game is loaded.
+     *
+     * @param creature the creature to add, which must not have been added yet
+     * @param x        the x-coordinate of the location
+     * @param y        the y-coordinate of the location
+     * @throws RuntimeException if the location is not empty ground
+     */
+    public void addAt(Creature creature, int x, int y) {
+        if (!isInBounds(x, y) || !getTile(x, y).isGround() || occupantAt(x, y) != 0) {
+            throw new RuntimeException("Could not add the creature at " + x + "/" + y + ", the location is not empty.");
+        }
+        creature.setPosition(x, y);
+        add(creature);
+    }
+
+    /**
+     * Adds the given creature at the empty ground cell closest to the given location, for example when it arrives by
+     * stairs another creature stands on. If there is no empty cell within {@link #REGION_SIZE} cells, the creature is
+     * added at a random empty location.
+     *
+     * @param creature the creature to add, which must not have been added yet
+     * @param x        the x-coordinate of the location
+     * @param y        the y-coordinate of the location
+     * @throws RuntimeException if there is no empty location left
+     */
+    public void addNear(Creature creature, int x, int y) {
+        for (int distance = 0; distance <= REGION_SIZE; distance++) {
+            for (int cy = y - distance; cy <= y + distance; cy++) {
+                for (int cx = x - distance; cx <= x + distance; cx++) {
+                    // Only the ring at this distance, the cells inside were tried before
+                    boolean ring = Math.abs(cx - x) == distance || Math.abs(cy - y) == distance;
+                    if (ring && isInBounds(cx, cy) && getTile(cx, cy).isGround() && occupantAt(cx, cy) == 0) {
+                        creature.setPosition(cx, cy);
+                        add(creature);
+                        return;
+                    }
+                }
+            }
+        }
+        addAtEmptyLocation(creature);
+    }
+
+    /**
+     * Finds the first cell with the given tile, row by row.
+     *
+     * @param tile the tile to look for
+     * @return the cell key of the first such cell, see {@link #cellKey(int, int)}, or -1 if there is none
+     */
+    public long findTile(Tile tile) {
+        byte ordinal = (byte) tile.ordinal();
+        byte[] row = new byte[width];
+        for (int y = 0; y < height; y++) {
+            copyTileRow(0, y, width, row, 0);
+            for (int x = 0; x < width; x++) {
+                if (row[x] == ordinal) {
+                    return cellKey(x, y);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates the given number of creatures and adds each of them at a random empty location. The factory must create
+     * creatures that have not been added to the world yet.
+     *
+     * @param factory creates one new creature per call
+     * @param count   the number of creatures to create
+     * @return the creatures that were added
+     * @throws RuntimeException if there are fewer empty locations than creatures to add, in which case no creature is
+     *                          added at all
+     */
+    public List<Creature> spawnMany(Supplier<Creature> factory, int count) {
+        if (freeCells != null && count > freeCount) {
+            throw new RuntimeException("Could not find " + count + " empty locations, only " + freeCount + " are left.");
+        }
+        List<Creature> spawned = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Creature creature = factory.get();
+            addAtEmptyLocation(creature);
+            spawned.add(creature);
+        }
+        return spawned;
+    }
+
+    /**
+     * Returns the number of ground cells without a creature.
+     *
+     * @return the number of empty cells, or -1 if the world has chunked tiles and does not know
+     */
+    public int getEmptyCellCount() {
+        return freeCells != null ? freeCount : -1;
+    }
+
+    /**
+     * Asks for a child of the given parent to be added at the given cell. The request is only carried out at the end of
+     * the current tick, together with all other requests of the tick, see {@link #updateCreatures()}. A request made
+     * outside of a tick waits for the end of the next one.
+     *
+     * @param parent the creature whose AI creates the child, see {@link CreatureAi#createChild()}
+     * @param x      the x-coordinate of the child
+     * @param y      the y-coordinate of the child
+     */
+    public void requestSpawn(Creature parent, int x, int y) {
+        if (spawnCount == spawnParents.length) {
+            spawnParents = Arrays.copyOf(spawnParents, spawnCount * 2);
+            spawnCells = Arrays.copyOf(spawnCells, spawnCount * 4);
+        }
+        spawnParents[spawnCount] = parent;
+        spawnCells[2 * spawnCount] = x;
+        spawnCells[2 * spawnCount + 1] = y;
+        spawnCount++;
+    }
+
+    /**
+     * Carries out the spawn requests in the order they were made. A request is dropped if its parent died in the
+     * meantime, if the cell is not empty ground, which includes the case of an earlier request that took the cell, or if
+     * the region of the cell already holds as many creatures as the region cap allows. Publishes a single
+     * {@link Event.Kind#SPAWN} summary for all children, see {@link EventBus#publishSummary}.
+     *
+     * @return the number of children spawned
+     */
+    private int commitSpawns() {
+        int spawned = 0;
+        for (int i = 0; i < spawnCount; i++) {
+            Creature parent = spawnParents[i];
+            spawnParents[i] = null;
+            int x = spawnCells[2 * i];
+            int y = spawnCells[2 * i + 1];
+            if (!parent.isInWorld() || !isInBounds(x, y) || !getTile(x, y).isGround() || occupantAt(x, y) != 0
+                    || getRegionPopulation(x, y) >= regionCap) {
+                continue;
+            }
+            Creature child = parent.createChild();
+            if (child != null) {
+                child.setPosition(x, y);
+                add(child);
+                // Keep the cells of the children at the front, the requests there have been read already
+                spawnCells[2 * spawned] = x;
+                spawnCells[2 * spawned + 1] = y;
+                spawned++;
+            }
+        }
+        spawnCount = 0;
+        events.publishSummary(Event.Kind.SPAWN, spawnCells, spawned);
+        return spawned;
+    }
+
+    /**
+     * Returns the number of creatures in the region of the given cell. The world is divided into square regions of
+     * {@link #REGION_SIZE} cells.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     * @return the number of creatures in the region
+     */
+    public int getRegionPopulation(int x, int y) {
+        long region = regionKey(x, y);
+        return regionPopulation != null ? regionPopulation[(int) region] : regionPopulationMap.get(region);
+    }
+
+    /**
+     * Returns the number of the region of a cell, row-major by region. Like a cell key it does not overflow for huge
+     * worlds; worlds with a population array are small enough for the number to fit an int.
+     */
+    private long regionKey(int x, int y) {
+        return (long) (y / REGION_SIZE) * regionsPerRow + x / REGION_SIZE;
+    }
+
+    /**
+     * Sets how many creatures a region may hold before spawn requests into it are dropped. Creatures that move into a
+     * region are not limited.
+     *
+     * @param regionCap the maximum population of a region for spawning
+     */
+    public void setRegionCap(int regionCap) {
+        this.regionCap = regionCap;
+    }
+
+    private void changeRegionPopulation(int x, int y, int delta) {
+        long region = regionKey(x, y);
+        if (regionPopulation != null) {
+            regionPopulation[(int) region] += delta;
+            return;
+        }
+        int population = regionPopulationMap.get(region) + delta;
+        if (population == 0) {
+            regionPopulationMap.remove(region);
+        } else {
+            regionPopulationMap.put(region, population);
+        }
+    }
+
     /**
      * Returns the creature at the specified coordinates.
      *
@@ -131,20 +741,85 @@ public class World {
      * @return The creature at the specified coordinates, or null if there is no such creature.
      */
     public Creature getCreature(int x, int y) {
-        for (Creature c : creatures) {
-            if (c.getX() == x && c.getY() == y) {
-                return c;
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return null;
+        }
+        int slot = occupantAt(x, y);
+        return slot == 0 ? null : creatures.getHandle(slot - 1);
+    }
+
+    /**
+     * Returns the creatures within the given radius around a position, including a creature standing on the position
+     * itself. Sparse worlds check every creature, crowded worlds only look at the cells of the disc.
+     *
+     * @param cx     the x-coordinate of the center of the disc
+     * @param cy     the y-coordinate of the center of the disc
+     * @param radius the radius of the disc
+     * @return the creatures inside the disc
+     */
+    public List<Creature> getCreaturesInRadius(int cx, int cy, int radius) {
+        List<Creature> result = new ArrayList<>();
+        getCreaturesInRadius(cx, cy, radius, result);
+        return result;
+    }
+
+    /**
+     * Adds the creatures within the given radius around a position to the given list, like
+     * {@link #getCreaturesInRadius(int, int, int)}. Callers that keep the list around and clear it between queries do
+     * not allocate anything once the list is large enough.
+     *
+     * @param cx     the x-coordinate of the center of the disc
+     * @param cy     the y-coordinate of the center of the disc
+     * @param radius the radius of the disc
+     * @param result receives the creatures inside the disc
+     */
+    public void getCreaturesInRadius(int cx, int cy, int radius, List<Creature> result) {
+        int radiusSquared = radius * radius;
+        if (creatures.size() < (2 * radius + 1) * (2 * radius + 1)) {
+            for (int slot = 0; slot < creatures.size(); slot++) {
+                int dx = creatures.getX(slot) - cx;
+                int dy = creatures.getY(slot) - cy;
+                if (dx * dx + dy * dy <= radiusSquared) {
+                    result.add(creatures.getHandle(slot));
+                }
+            }
+            return;
+        }
+
+        // Walk the rows of the disc and clamp each row to the world once
+        int minY = Math.max(0, cy - radius);
+        int maxY = Math.min(height - 1, cy + radius);
+        for (int y = minY; y <= maxY; y++) {
+            int dy = y - cy;
+            int halfWidth = (int) Math.sqrt(radiusSquared - dy * dy);
+            int minX = Math.max(0, cx - halfWidth);
+            int maxX = Math.min(width - 1, cx + halfWidth);
+            for (int x = minX; x <= maxX; x++) {
+                int slot = occupantAt(x, y);
+                if (slot != 0) {
+                    result.add(creatures.getHandle(slot - 1));
+                }
             }
         }
-        return null;
     }
 
     /**
-     * Returns the list of creatures that belong to the world.
+     * Returns the list of creatures that belong to the world. The list is a read-only view of the creature store, so it
+     * changes when creatures are added or removed. The order of the list is not stable, removing a creature moves the
+     * last creature into its place.
      *
      * @return the list of creatures in the world
      */
     public List<Creature> getCreatures() {
+        return creatureView;
+    }
+
+    /**
+     * Returns the store that keeps the state of the creatures of this world.
+     *
+     * @return the creature store
+     */
+    CreatureStore getCreatureStore() {
         return creatures;
     }
 
@@ -154,16 +829,272 @@ public class World {
      * @param other the creature to remove
      */
     public void remove(Creature other) {
-        creatures.remove(other);
+        int slot = other.getSlot();
+        if (slot < 0) {
+            return;
+        }
+        clearOccupant(other.getX(), other.getY(), slot);
+        events.unsubscribe(other);
+
+        // The creature takes its state with it before its slot is reused
+        other.setSlot(-1);
+
+        // Swap the last creature into the freed slot, so that removal does not shift the whole store
+        int lastSlot = creatures.size() - 1;
+        int lastX = creatures.getX(lastSlot);
+        int lastY = creatures.getY(lastSlot);
+        Creature last = creatures.remove(slot);
+        if (last != null) {
+            clearOccupant(lastX, lastY, lastSlot);
+            last.setSlot(slot);
+            setOccupant(lastX, lastY, slot);
+        }
     }
 
     /**
-     * Tells each creature in the world to take a turn.
+     * Adds the creature at its current position and registers it in the occupancy index.
+     *
+     * @param creature the creature to add
+     * @throws IllegalStateException if the position is outside of the world or taken, nothing is added then
+     */
+    private void add(Creature creature) {
+        int x = creature.getX();
+        int y = creature.getY();
+        if (!isInBounds(x, y) || occupantAt(x, y) != 0) {
+            throw new IllegalStateException("Could not add the creature at " + x + "/" + y + ", the location is taken.");
+        }
+        int slot = creatures.add(creature, creature.getType().getId(), x, y, creature.getHp());
+        creature.setSlot(slot);
+        setOccupant(x, y, slot);
+    }
+
+    /**
+     * Moves a creature that belongs to this world and updates the occupancy index. Creatures that have not been added
+     * to the world yet are ignored.
+     *
+     * @param creature the creature that moves
+     * @param toX      the new x-coordinate of the creature
+     * @param toY      the new y-coordinate of the creature
+     * @throws IllegalStateException if the cell is outside of the world or another creature stands on it, in which
+     *                               case the creature stays where it is
+     */
+    void moveCreature(Creature creature, int toX, int toY) {
+        int slot = creature.getSlot();
+        if (slot < 0) {
+            return;
+        }
+        if (!isInBounds(toX, toY)) {
+            throw new IllegalStateException("Could not move the creature to " + toX + "/" + toY
+                    + ", the location is outside of the world.");
+        }
+        int occupant = occupantAt(toX, toY);
+        if (occupant != 0 && occupant != slot + 1) {
+            throw new IllegalStateException("Could not move the creature to " + toX + "/" + toY
+                    + ", another creature stands there.");
+        }
+        clearOccupant(creatures.getX(slot), creatures.getY(slot), slot);
+        creatures.setPosition(slot, toX, toY);
+        setOccupant(toX, toY, slot);
+    }
+
+    /**
+     * Returns the slot of the creature at the given cell plus one, or zero if the cell is empty.
+     */
+    private int occupantAt(int x, int y) {
+        return occupants != null ? occupants[y * width + x] : occupantMap.get(cellKey(x, y));
+    }
+
+    /**
+     * Registers a creature at a cell. Every creature in the store must be in the occupancy index, so the callers make
+     * sure the cell is free before they write the position of the creature.
+     *
+     * @throws IllegalStateException if the cell is outside of the world or taken
+     */
+    private void setOccupant(int x, int y, int slot) {
+        if (!isInBounds(x, y) || occupantAt(x, y) != 0) {
+            throw new IllegalStateException("The cell " + x + "/" + y + " is outside of the world or taken.");
+        }
+        if (occupants != null) {
+            occupants[y * width + x] = slot + 1;
+            removeFreeCell(y * width + x);
+        } else {
+            occupantMap.put(cellKey(x, y), slot + 1);
+        }
+        changeRegionPopulation(x, y, 1);
+        markDirty(x, y);
+    }
+
+    private void clearOccupant(int x, int y, int slot) {
+        if (!isInBounds(x, y) || occupantAt(x, y) != slot + 1) {
+            return;
+        }
+        if (occupants != null) {
+            occupants[y * width + x] = 0;
+            if (getTile(x, y).isGround()) {
+                addFreeCell(y * width + x);
+            }
+        } else {
+            occupantMap.remove(cellKey(x, y));
+        }
+        changeRegionPopulation(x, y, -1);
+        markDirty(x, y);
+    }
+
+    /**
+     * Returns the key of a cell, which numbers the cells row by row: y * width + x. Unlike a plain int index, the key
+     * does not overflow for huge worlds.
+     *
+     * @param x the x-coordinate of the cell
+     * @param y the y-coordinate of the cell
+     * @return the key of the cell
+     */
+    public long cellKey(int x, int y) {
+        return (long) y * width + x;
+    }
+
+    /**
+     * Passes every cell whose tile or creature changed since the last call to the consumer, and forgets them. Cells
+     * are passed as cell keys, see {@link #cellKey(int, int)}, and may be passed more than once.
+     *
+     * @param consumer receives the keys of the changed cells
+     * @return false if too many cells changed to list them, in which case nothing is passed and the caller should
+     * assume that every cell changed
+     */
+    public boolean drainDirtyCells(LongConsumer consumer) {
+        boolean listed = !allDirty;
+        if (listed) {
+            for (int i = 0; i < dirtyCount; i++) {
+                consumer.accept(dirtyCells[i]);
+            }
+        }
+        dirtyCount = 0;
+        allDirty = false;
+        return listed;
+    }
+
+    private void markDirty(int x, int y) {
+        if (allDirty) {
+            return;
+        }
+        if (dirtyCount == dirtyCells.length) {
+            // Past a quarter of the map a full redraw is cheaper than listing the cells, and nobody may be listening
+            if (dirtyCount >= MAX_DIRTY_CELLS || dirtyCount >= (long) width * height / 4) {
+                allDirty = true;
+                dirtyCount = 0;
+                return;
+            }
+            dirtyCells = Arrays.copyOf(dirtyCells, dirtyCount * 2);
+        }
+        dirtyCells[dirtyCount++] = cellKey(x, y);
+    }
+
+    private void addFreeCell(int cell) {
+        if (freePositions[cell] < 0) {
+            freePositions[cell] = freeCount;
+            freeCells[freeCount++] = cell;
+        }
+    }
+
+    private void removeFreeCell(int cell) {
+        int position = freePositions[cell];
+        if (position < 0) {
+            return;
+        }
+        // Move the last free cell into the gap
+        int last = freeCells[--freeCount];
+        freeCells[position] = last;
+        freePositions[last] = position;
+        freePositions[cell] = -1;
+    }
+
+    private boolean isInBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /**
+     * Returns the bus the events of this world are published on.
+     *
+     * @return the event bus
+     */
+    public EventBus getEvents() {
+        return events;
+    }
+
+    /**
+     * Sets the pool the turns of the creatures are planned on. The outcome of a turn does not depend on the pool, only
+     * how fast it is computed.
+     *
+     * @param updatePool the pool to plan turns on
+     */
+    public void setUpdatePool(ForkJoinPool updatePool) {
+        this.updatePool = updatePool;
+    }
+
+    /**
+     * Tells each creature in the world to take a turn. The turn has two phases. First every creature plans its turn,
+     * looking at the world as it was when the turn started; large worlds plan on several threads at once. Then the
+     * plans are carried out one creature after another, in the order of the creature list, so that the first creature
+     * wins when two want the same cell. Creatures that die before their plan is carried out do nothing. Finally the
+     * spawns requested during the tick are carried out, see {@link #requestSpawn}.
+     * <p>
+     * Before the creatures plan, the flow fields are brought up to date, see {@link #getFlowField(Creature, int)}.
      */
     public void updateCreatures() {
-        List<Creature> creaturesToUpdate = new ArrayList<Creature>(creatures);
-        for (Creature creature : creaturesToUpdate) {
-            creature.takeTurn();
+        long start = Metrics.start();
+        refreshFlowFields();
+        Creature[] creaturesToUpdate = creatures.snapshot();
+        Intent[] intents = new Intent[creaturesToUpdate.length];
+        if (creaturesToUpdate.length < PARALLEL_PLANNING_THRESHOLD) {
+            planTurns(creaturesToUpdate, intents, 0, creaturesToUpdate.length);
+        } else {
+            updatePool.invoke(new PlanTurns(creaturesToUpdate, intents, 0, creaturesToUpdate.length));
+        }
+
+        for (int i = 0; i < creaturesToUpdate.length; i++) {
+            if (intents[i] != null && creaturesToUpdate[i].isInWorld()) {
+                long carryOutStart = Metrics.start();
+                creaturesToUpdate[i].carryOut(intents[i]);
+                Metrics.stop(Metrics.Probe.CARRY_OUT, carryOutStart, creaturesToUpdate[i]);
+            }
+        }
+        int spawned = commitSpawns();
+        Metrics.tick(start, creatures.size(), spawned);
+    }
+
+    private static void planTurns(Creature[] creatures, Intent[] intents, int from, int to) {
+        for (int i = from; i < to; i++) {
+            long start = Metrics.start();
+            intents[i] = creatures[i].planTurn();
+            Metrics.stop(Metrics.Probe.PLAN_TURN, start, creatures[i]);
+        }
+    }
+
+    /**
+     * Plans the turns of a range of creatures, splitting it in halves until the ranges are small enough.
+     */
+    private static class PlanTurns extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Creature[] creatures;
+        private final Intent[] intents;
+        private final int from;
+        private final int to;
+
+        PlanTurns(Creature[] creatures, Intent[] intents, int from, int to) {
+            this.creatures = creatures;
+            this.intents = intents;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_PLANNING_THRESHOLD / 4) {
+                planTurns(creatures, intents, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PlanTurns(creatures, intents, from, middle), new PlanTurns(creatures, intents, middle, to));
         }
     }
 
@@ -1,14 +1,51 @@
 package net.zn80.trystansroguelike;
 
+import java.util.function.DoubleConsumer;
+import java.util.stream.IntStream;
+
 public class WorldBuilder {
+    /**
+     * The number of rows that share one random number generator when the tiles are randomized.
+     */
+    private static final int BAND_HEIGHT = 64;
+    /**
+     * The number of smoothing passes of {@link #makeCaves()}.
+     */
+    private static final int SMOOTHING_PASSES = 8;
+
     private final int width;
     private final int height;
-    private Tile[][] tiles;
+    private final CaveSmoother caves;
+    private final Rng rng;
+    private DoubleConsumer progressListener = progress -> {
+    };
+    private boolean stairsUp;
+    private boolean stairsDown;
+    private int minCaveSize;
 
+    /**
+     * Creates a builder for a world of the given size with a random seed.
+     *
+     * @param width  the width of the world
+     * @param height the height of the world
+     */
     public WorldBuilder(int width, int height) {
+        this(width, height, Rng.randomSeed());
+    }
+
+    /**
+     * Creates a builder for a world of the given size. The same seed always builds the same world, and the world built
+     * from it continues with random numbers derived from the same seed.
+     *
+     * @param width  the width of the world
+     * @param height the height of the world
+     * @param seed   the seed of the world
+     */
+    public WorldBuilder(int width, int height, long seed) {
         this.height = height;
         this.width = width;
-        this.tiles = new Tile[width][height];
+        this.caves = new CaveSmoother(width, height);
+        this.rng = new Rng(seed);
     }
 
     /**
@@ -17,78 +54,149 @@ public class WorldBuilder {
      * @return the current WorldBuilder instance
      */
     public WorldBuilder makeCaves() {
-        return randomizeTiles().smooth(8);
+        long start = Metrics.start();
+        randomizeTiles();
+        // Randomizing takes about as long as a smoothing pass and counts as one more step
+        progressListener.accept(1.0 / (SMOOTHING_PASSES + 1));
+        smooth(SMOOTHING_PASSES);
+        Metrics.stop(Metrics.Probe.MAKE_CAVES, start);
+        return this;
+    }
+
+    /**
+     * Sets the listener that is told how far {@link #makeCaves()} has come, as a fraction between 0 and 1. The listener
+     * is called on the thread that builds the world.
+     *
+     * @param progressListener the listener
+     * @return the current WorldBuilder instance
+     */
+    public WorldBuilder onProgress(DoubleConsumer progressListener) {
+        this.progressListener = progressListener;
+        return this;
     }
 
     /**
      * Applies a smoothing algorithm to the tile data, using a Moore neighborhood to determine whether to assign a floor
-     * or wall tile to each position.
+     * or wall tile to each position. See {@link CaveSmoother} for how the passes are computed.
      *
      * @param times the number of times to apply the smoothing algorithm
      * @return the current WorldBuilder instance
      */
     private WorldBuilder smooth(int times) {
-        if (times == 0) {
-            return this;
-        }
-
-        Tile[][] tiles2 = new Tile[width][height];
         for (int time = 0; time < times; time++) {
-            // Iterate over all tiles to calculate their new state based on the tiles around them
-            for (int x = 0; x < width; x++) {
-                for (int y = 0; y < height; y++) {
-                    int floors = 0;
-                    int rocks = 0;
-
-                    // Iterate over all tiles around the current tile to count how many are floors and how many are walls
-                    for (int ox = -1; ox < 2; ox++) {
-                        for (int oy = -1; oy < 2; oy++) {
-                            // Make sure we're not going out of bounds of the tile array
-                            if (x + ox < 0 || x + ox >= width || y + oy < 0 || y + oy >= height)
-                                continue;
-
-                            // Count how many floors and how many walls there are in the surrounding tiles
-                            if (tiles[x + ox][y + oy] == Tile.FLOOR)
-                                floors++;
-                            else
-                                rocks++;
-                        }
-                    }
-                    // Set the new state of the tile based on the number of floors and walls around it
-                    tiles2[x][y] = floors >= rocks ? Tile.FLOOR : Tile.WALL;
-                }
-            }
-            // Set the old tile array to the new one, so that we can continue to smooth it
-            tiles = tiles2;
+            caves.smooth(1);
+            progressListener.accept((time + 2.0) / (times + 1));
         }
         return this;
     }
 
     /**
-     * Randomizes the tiles in the WorldBuilder's tiles array by setting each tile to either Tile.FLOOR or Tile.WALL
-     * with equal probability.
+     * Randomizes the tiles by setting each tile to either Tile.FLOOR or Tile.WALL with equal probability. Every bit of
+     * a random long decides one tile, so a whole word of tiles is set at once. Each band of rows gets its own generator,
+     * split off in order, so the bands can be filled in parallel and the result still only depends on the seed.
      *
      * @return this WorldBuilder instance, for method chaining
      */
     private WorldBuilder randomizeTiles() {
-        // Loop through every tile in the tiles array
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                // Set the tile at (x,y) to Tile.FLOOR or Tile.WALL with equal probability
-                tiles[x][y] = Math.random() < 0.5 ? Tile.FLOOR : Tile.WALL;
-            }
+        int bands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        Rng[] bandRngs = new Rng[bands];
+        for (int band = 0; band < bands; band++) {
+            bandRngs[band] = rng.split();
         }
+
+        IntStream bandStream = IntStream.range(0, bands);
+        if (bands > 1) {
+            bandStream = bandStream.parallel();
+        }
+        bandStream.forEach(band -> {
+            Rng bandRng = bandRngs[band];
+            int toY = Math.min(height, (band + 1) * BAND_HEIGHT);
+            for (int y = band * BAND_HEIGHT; y < toY; y++) {
+                for (int word = 0; word < caves.getWordsPerRow(); word++) {
+                    caves.setWord(y, word, bandRng.nextLong());
+                }
+            }
+        });
         // Return this WorldBuilder instance for method chaining
         return this;
     }
 
+    /**
+     * Puts stairs on the level when it is built, on random floor tiles, see {@link Dungeon}.
+     *
+     * @param up   whether there are stairs up to the level above
+     * @param down whether there are stairs down to the level below
+     * @return this WorldBuilder instance, for method chaining
+     */
+    public WorldBuilder makeStairs(boolean up, boolean down) {
+        this.stairsUp = up;
+        this.stairsDown = down;
+        return this;
+    }
+
+    /**
+     * Fills the caves with fewer than the given number of cells with wall when the world is built, see
+     * {@link Connectivity}. The smoothing leaves many such pockets, and creatures placed in them can not reach anyone.
+     *
+     * @param minCaveSize the number of cells a cave needs to stay open
+     * @return this WorldBuilder instance, for method chaining
+     */
+    public WorldBuilder fillPockets(int minCaveSize) {
+        this.minCaveSize = minCaveSize;
+        return this;
+    }
+
     /**
      * Builds a new World instance from the tile data stored in the WorldBuilder instance.
      *
      * @return a new World instance
      */
     public World build() {
-        return new World(tiles);
+        byte[] tiles = caves.toTiles();
+        if (minCaveSize > 0 || stairsUp || stairsDown) {
+            Connectivity connectivity = new Connectivity(new FlatTileStore(width, height, tiles));
+            if (minCaveSize > 0) {
+                fillPockets(tiles, connectivity);
+            }
+            if (stairsUp || stairsDown) {
+                // Both stairs go into the largest cave, so that the way down can be walked from the way up
+                Rng stairsRng = rng.split();
+                int region = connectivity.getLargestRegion();
+                if (stairsUp) {
+                    placeOnFloor(tiles, Tile.STAIRS_UP, stairsRng, connectivity, region);
+                }
+                if (stairsDown) {
+                    placeOnFloor(tiles, Tile.STAIRS_DOWN, stairsRng, connectivity, region);
+                }
+            }
+        }
+        return new World(width, height, tiles, rng.split());
+    }
+
+    private void fillPockets(byte[] tiles, Connectivity connectivity) {
+        byte wall = (byte) Tile.WALL.ordinal();
+        for (int cell = 0; cell < tiles.length; cell++) {
+            int region = connectivity.regionOf(cell % width, cell / width);
+            if (region != 0 && connectivity.getSize(region) < minCaveSize) {
+                tiles[cell] = wall;
+            }
+        }
+    }
+
+    /**
+     * Replaces the first floor tile of the given region at or after a random cell with the given tile. A level without
+     * any floor gets no such tile.
+     */
+    private void placeOnFloor(byte[] tiles, Tile tile, Rng stairsRng, Connectivity connectivity, int region) {
+        byte floor = (byte) Tile.FLOOR.ordinal();
+        int start = stairsRng.nextInt(tiles.length);
+        for (int i = 0; i < tiles.length; i++) {
+            int cell = (start + i) % tiles.length;
+            if (tiles[cell] == floor && connectivity.regionOf(cell % width, cell / width) == region) {
+                tiles[cell] = (byte) tile.ordinal();
+                return;
+            }
+        }
     }
 
 }
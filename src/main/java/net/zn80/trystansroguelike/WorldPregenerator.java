@@ -0,0 +1,134 @@
+package net.zn80.trystansroguelike;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Generates worlds in the background, so that a new game can start without waiting for its world. The worlds are
+ * generated one after another on a dedicated thread and kept in a small pool until they are taken. Generation starts
+ * as soon as {@link #start()} is called, usually when the start screen appears, before anyone asked for a world.
+ * <p>
+ * The methods of this class may be called from any thread.
+ */
+public class WorldPregenerator {
+
+    private static WorldPregenerator defaultInstance;
+
+    private final int width;
+    private final int height;
+    private final int fungi;
+    private final int poolSize;
+    private final ExecutorService executor;
+    private final ArrayDeque<Generation> pool = new ArrayDeque<>();
+
+    /**
+     * Creates a new generator. Nothing is generated until {@link #start()} or {@link #take()} is called.
+     *
+     * @param width    the width of the worlds
+     * @param height   the height of the worlds
+     * @param fungi    the number of fungi in each world
+     * @param poolSize the number of worlds to keep ready
+     */
+    public WorldPregenerator(int width, int height, int fungi, int poolSize) {
+        this.width = width;
+        this.height = height;
+        this.fungi = fungi;
+        this.poolSize = poolSize;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "world-generator");
+            // Generation must not keep the game running after its window was closed
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the generator the screens of the game share. It generates worlds of the size the game is played in and
+     * keeps one world ready.
+     *
+     * @return the shared generator
+     */
+    public static synchronized WorldPregenerator getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new WorldPregenerator(90, 31, 8, 1);
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Starts generating worlds until the pool is full. Calling this again while the pool is full does nothing.
+     */
+    public synchronized void start() {
+        while (pool.size() < poolSize) {
+            pool.addLast(new Generation());
+        }
+    }
+
+    /**
+     * Takes the oldest world from the pool and starts generating a world to replace it. If the pool is empty, a world is
+     * generated right away.
+     *
+     * @return the future simulation, which is already done if a world was ready
+     */
+    public synchronized CompletableFuture<Simulation> take() {
+        Generation generation = pool.isEmpty() ? new Generation() : pool.removeFirst();
+        start();
+        return generation.future;
+    }
+
+    /**
+     * Returns whether the next world {@link #take()} returns is ready.
+     *
+     * @return true if the next world is ready
+     */
+    public synchronized boolean isReady() {
+        return !pool.isEmpty() && pool.getFirst().future.isDone();
+    }
+
+    /**
+     * Returns how far the next world {@link #take()} returns has come, as a fraction between 0 and 1.
+     *
+     * @return the progress of the next world, 0 if none is being generated
+     */
+    public synchronized double getProgress() {
+        return pool.isEmpty() ? 0 : pool.getFirst().progress;
+    }
+
+    /**
+     * Returns the number of worlds in the pool that are ready.
+     *
+     * @return the number of ready worlds
+     */
+    public synchronized int getReadyCount() {
+        int ready = 0;
+        for (Generation generation : pool) {
+            if (generation.future.isDone()) {
+                ready++;
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Stops generating worlds. Worlds that are not done yet are never completed.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * One world that is generated on the executor.
+     */
+    private class Generation {
+        final CompletableFuture<Simulation> future;
+        volatile double progress;
+
+        Generation() {
+            long seed = Rng.randomSeed();
+            future = CompletableFuture.supplyAsync(
+                    () -> Simulation.create(seed, width, height, fungi, progress -> this.progress = progress), executor);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package net.zn80.trystansroguelike.screens;
+
+import net.trystan.asciipanel.AsciiPanel;
+
+import java.awt.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Draws into an AsciiPanel, the terminal of the game window.
+ */
+public class AsciiPanelTarget implements RenderTarget {
+
+    private final AsciiPanel terminal;
+    /**
+     * The colors written so far. A frame only uses a handful, so no Color is created for every cell.
+     */
+    private final Map<Integer, Color> colors = new HashMap<>();
+    private Color lastColor;
+    private int lastRgb;
+
+    /**
+     * Creates a target that draws into the given panel.
+     *
+     * @param terminal the panel to draw into
+     */
+    public AsciiPanelTarget(AsciiPanel terminal) {
+        this.terminal = terminal;
+    }
+
+    public AsciiPanel getTerminal() {
+        return terminal;
+    }
+
+    @Override
+    public int getWidthInCharacters() {
+        return terminal.getWidthInCharacters();
+    }
+
+    @Override
+    public int getHeightInCharacters() {
+        return terminal.getHeightInCharacters();
+    }
+
+    @Override
+    public void write(char glyph, int x, int y, int color) {
+        if (x < 0 || x >= terminal.getWidthInCharacters() || y < 0 || y >= terminal.getHeightInCharacters()) {
+            return;
+        }
+        terminal.write(glyph, x, y, toColor(color));
+    }
+
+    @Override
+    public void write(String text, int x, int y) {
+        terminal.write(text, x, y);
+    }
+
+    @Override
+    public void writeCenter(String text, int y) {
+        terminal.writeCenter(text, y);
+    }
+
+    @Override
+    public void clear() {
+        terminal.clear();
+    }
+
+    private Color toColor(int rgb) {
+        if (lastColor == null || rgb != lastRgb) {
+            lastColor = colors.computeIfAbsent(rgb, key -> new Color(key, true));
+            lastRgb = rgb;
+        }
+        return lastColor;
+    }
+}
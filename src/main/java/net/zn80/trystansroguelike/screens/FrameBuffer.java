@@ -0,0 +1,100 @@
+package net.zn80.trystansroguelike.screens;
+
+/**
+ * A front and a back buffer of glyphs and colors for a rectangle of the terminal. Screens draw the next frame into the
+ * back buffer, and {@link #flush(RenderTarget)} only writes the cells that differ from the front buffer, which holds
+ * what the terminal currently shows. Colors are ARGB ints, see {@link RenderTarget}.
+ */
+public class FrameBuffer {
+
+    private final int width;
+    private final int height;
+    private final char[] frontGlyphs;
+    private final int[] frontColors;
+    private final char[] backGlyphs;
+    private final int[] backColors;
+    private final boolean[] pending;
+    private final int[] pendingCells;
+    private int pendingCount;
+
+    /**
+     * Creates a new frame buffer. The front buffer starts out invalid, so the first flush writes every cell that was
+     * set.
+     *
+     * @param width  the width of the buffer in cells
+     * @param height the height of the buffer in cells
+     */
+    public FrameBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.frontGlyphs = new char[width * height];
+        this.frontColors = new int[width * height];
+        this.backGlyphs = new char[width * height];
+        this.backColors = new int[width * height];
+        this.pending = new boolean[width * height];
+        this.pendingCells = new int[width * height];
+    }
+
+    /**
+     * Sets a cell of the back buffer.
+     *
+     * @param glyph the glyph of the cell
+     * @param x     the x-coordinate of the cell
+     * @param y     the y-coordinate of the cell
+     * @param color the color of the glyph, as ARGB
+     */
+    public void set(char glyph, int x, int y, int color) {
+        int cell = y * width + x;
+        backGlyphs[cell] = glyph;
+        backColors[cell] = color;
+        if (!pending[cell]) {
+            pending[cell] = true;
+            pendingCells[pendingCount++] = cell;
+        }
+    }
+
+    /**
+     * Forgets what the terminal shows in the given row, for example because something else was written over it. The
+     * next flush writes every cell of the row that is set again.
+     *
+     * @param y the row to invalidate
+     */
+    public void invalidateRow(int y) {
+        for (int cell = y * width; cell < (y + 1) * width; cell++) {
+            // No glyph is ever drawn as 0, so the cell differs from whatever is set next
+            frontGlyphs[cell] = 0;
+            frontColors[cell] = 0;
+        }
+    }
+
+    /**
+     * Forgets what the terminal shows, for example because it was cleared.
+     */
+    public void invalidate() {
+        for (int y = 0; y < height; y++) {
+            invalidateRow(y);
+        }
+    }
+
+    /**
+     * Writes the cells that were set since the last flush and differ from what the terminal shows.
+     *
+     * @param terminal the terminal to write to
+     * @return the number of cells written
+     */
+    public int flush(RenderTarget terminal) {
+        int written = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            int cell = pendingCells[i];
+            pending[cell] = false;
+            if (backGlyphs[cell] != frontGlyphs[cell] || backColors[cell] != frontColors[cell]) {
+                frontGlyphs[cell] = backGlyphs[cell];
+                frontColors[cell] = backColors[cell];
+                terminal.write(backGlyphs[cell], cell % width, cell / width, backColors[cell]);
+                written++;
+            }
+        }
+        pendingCount = 0;
+        return written;
+    }
+}
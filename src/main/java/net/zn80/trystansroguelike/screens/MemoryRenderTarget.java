@@ -0,0 +1,114 @@
+package net.zn80.trystansroguelike.screens;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the drawn cells in two flat arrays, row-major, one of glyphs and one of colors. It needs no AWT, so screens can
+ * be drawn on headless servers, in benchmarks and in tests, and two frames are compared cell by cell in no time.
+ */
+public class MemoryRenderTarget implements RenderTarget {
+
+    private final int width;
+    private final int height;
+    private final char[] glyphs;
+    private final int[] colors;
+
+    /**
+     * Creates a target of the given size, with every cell blank.
+     *
+     * @param width  the width in cells
+     * @param height the height in cells
+     */
+    public MemoryRenderTarget(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.glyphs = new char[width * height];
+        this.colors = new int[width * height];
+        clear();
+    }
+
+    /**
+     * Creates a target of the size of the game window.
+     */
+    public MemoryRenderTarget() {
+        this(80, 24);
+    }
+
+    @Override
+    public int getWidthInCharacters() {
+        return width;
+    }
+
+    @Override
+    public int getHeightInCharacters() {
+        return height;
+    }
+
+    @Override
+    public void write(char glyph, int x, int y, int color) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return;
+        }
+        glyphs[y * width + x] = glyph;
+        colors[y * width + x] = color;
+    }
+
+    /**
+     * Blanks every cell: a space in the default color.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(glyphs, ' ');
+        Arrays.fill(colors, DEFAULT_FOREGROUND);
+    }
+
+    public char getGlyph(int x, int y) {
+        return glyphs[y * width + x];
+    }
+
+    public int getColor(int x, int y) {
+        return colors[y * width + x];
+    }
+
+    /**
+     * Returns the glyphs of a row as a string.
+     *
+     * @param y the row
+     * @return the glyphs of the row
+     */
+    public String getRow(int y) {
+        return new String(glyphs, y * width, width);
+    }
+
+    /**
+     * Counts the cells whose glyph or color differ from the same cell of another target of the same size.
+     *
+     * @param other the other target
+     * @return the number of cells that differ
+     * @throws IllegalArgumentException if the targets differ in size
+     */
+    public int countDifferences(MemoryRenderTarget other) {
+        if (other.width != width || other.height != height) {
+            throw new IllegalArgumentException("The targets differ in size");
+        }
+        int differences = 0;
+        for (int i = 0; i < glyphs.length; i++) {
+            if (glyphs[i] != other.glyphs[i] || colors[i] != other.colors[i]) {
+                differences++;
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * Returns the glyphs, one line per row.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(height * (width + 1));
+        for (int y = 0; y < height; y++) {
+            text.append(glyphs, y * width, width).append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -5,67 +5,113 @@
 package net.zn80.trystansroguelike.screens;
 
 import net.trystan.asciipanel.AsciiPanel;
+import net.zn80.trystansroguelike.Command;
 import net.zn80.trystansroguelike.Creature;
-import net.zn80.trystansroguelike.CreatureFactory;
+import net.zn80.trystansroguelike.FieldOfView;
+import net.zn80.trystansroguelike.Journal;
+import net.zn80.trystansroguelike.MessageLog;
+import net.zn80.trystansroguelike.Metrics;
+import net.zn80.trystansroguelike.Rng;
+import net.zn80.trystansroguelike.Simulation;
+import net.zn80.trystansroguelike.Snapshot;
+import net.zn80.trystansroguelike.Tile;
 import net.zn80.trystansroguelike.World;
-import net.zn80.trystansroguelike.WorldBuilder;
 
 import java.awt.event.KeyEvent;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.UncheckedIOException;
+import java.util.function.LongConsumer;
 
 public class PlayScreen implements Screen {
+    private static final int REMEMBERED_COLOR = AsciiPanel.brightBlack.getRGB();
+    private static final int UNSEEN_COLOR = AsciiPanel.black.getRGB();
+
     private final int screenWidth;
     private final int screenHeight;
+    private final Simulation simulation;
+    private final MessageLog messages;
+    // The level the player is on, they change when the player takes the stairs
     private World world;
     private Creature player;
-    private List<String> messages;
+    private FieldOfView fieldOfView;
+    private final byte[] tileRow;
+    private final char[] glyphRow;
+    private final int[] colorRow;
+    private final FrameBuffer frame;
+    private final Journal journal;
+    private int lastLeft = -1;
+    private int lastTop = -1;
+    private int messageRowsShown;
 
+    /**
+     * Creates a new play screen with a randomly generated world.
+     */
     public PlayScreen() {
-        this.screenWidth = 80;
-        this.screenHeight = 21;
-        this.messages = new ArrayList<String>();
-
-        createWorld();
-
-        CreatureFactory creatureFactory = new CreatureFactory(world);
-        createCreatures(creatureFactory);
+        this(Rng.randomSeed());
     }
 
     /**
-     * Creates a new world with a size of 90x31 and generates caves.
+     * Creates a new play screen whose world is generated from the given seed. The same seed always creates the same
+     * world with the same creatures.
+     *
+     * @param seed the seed of the world
      */
-    private void createWorld() {
-        this.world = new WorldBuilder(90, 31).makeCaves().build();
+    public PlayScreen(long seed) {
+        this(Simulation.create(seed, 90, 31, 8));
     }
 
     /**
-     * Creates a player and 8 fungus creatures using the specified creature factory.
+     * Creates a new play screen that shows and advances the given simulation without recording it.
      *
-     * @param creatureFactory The creature factory to use for creating the creatures.
+     * @param simulation the simulation to play
      */
-    private void createCreatures(CreatureFactory creatureFactory) {
-        player = creatureFactory.newPlayer(messages);
-        System.out.format("Player %c added at %d/%d%n", player.getGlyph(), player.getX(), player.getY());
+    public PlayScreen(Simulation simulation) {
+        this(simulation, null);
+    }
 
-        for (int i = 0; i < 8; i++) {
-            Creature f = creatureFactory.newFungus();
-            System.out.format("Creature %c added at %d/%d%n", f.getGlyph(), f.getX(), f.getY());
-        }
+    /**
+     * Creates a new play screen that shows and advances the given simulation and records every turn to the given
+     * journal, so that the game can be replayed later, see {@link Journal#forNewGame(Simulation)}.
+     *
+     * @param simulation the simulation to play
+     * @param journal    the journal to record to, or null to not record the game
+     */
+    public PlayScreen(Simulation simulation, Journal journal) {
+        this.screenWidth = 80;
+        this.screenHeight = 21;
+        this.simulation = simulation;
+        this.world = simulation.getWorld();
+        this.player = simulation.getPlayer();
+        this.messages = simulation.getMessages();
+        this.fieldOfView = simulation.getFieldOfView();
+        this.tileRow = new byte[screenWidth];
+        this.glyphRow = new char[screenWidth];
+        this.colorRow = new int[screenWidth];
+        this.frame = new FrameBuffer(screenWidth, screenHeight);
+        this.journal = journal;
     }
 
     /**
-     * Displays the game output on the specified AsciiPanel terminal. This method first calculates the left and top
+     * Displays the game output on the specified RenderTarget terminal. This method first calculates the left and top
      * offsets of the viewport by calling the getScrollX and getScrollY methods, respectively. It then passes these
      * values to the displayTiles method to show the appropriate section of the world. Next, it calls the
      * displayMessages method to show any messages that have been generated since the last call to displayOutput.
      * Finally, it displays the player character at its current position and shows the player's health status at the
      * bottom of the screen.
+     * <p>
+     * The terminal is expected to still show the previous frame of this screen, only the cells that changed are
+     * written again.
      *
-     * @param terminal the AsciiPanel on which to display the game output
+     * @param terminal the target on which to display the game output
      */
     @Override
-    public void displayOutput(AsciiPanel terminal) {
+    public void displayOutput(RenderTarget terminal) {
+        long start = Metrics.start();
+        if (simulation.getWorld() != world) {
+            world = simulation.getWorld();
+            player = simulation.getPlayer();
+            fieldOfView = simulation.getFieldOfView();
+            invalidate();
+        }
         // Calculate the left and top offsets of the viewport
         int left = getScrollX();
         int top = getScrollY();
@@ -77,13 +123,23 @@ public class PlayScreen implements Screen {
         displayMessages(terminal, messages);
 
         // Display the player character at its current position
-        terminal.write(player.getGlyph(), player.getX() - left, player.getY() - top, player.getColor());
+        terminal.write(player.getGlyph(), player.getX() - left, player.getY() - top, player.getColor().getRGB());
 
         // Show the player's health status at the bottom of the screen
-        String stats = String.format(" %3d/%3d hp", player.getHp(), player.getMaxHp());
+        String stats = String.format(" %3d/%3d hp  depth %2d", player.getHp(), player.getMaxHp(),
+                simulation.getDepth() + 1);
         terminal.write(stats, 1, 23);
+        Metrics.stop(Metrics.Probe.DISPLAY_OUTPUT, start);
     }
 
+    /**
+     * Forgets what the terminal shows, so that the next call to displayOutput draws the whole screen. Call this after
+     * the terminal was cleared.
+     */
+    public void invalidate() {
+        lastLeft = -1;
+        lastTop = -1;
+    }
 
     /**
      * Calculates the horizontal scroll position of the viewport based on the center point and screen size. Ensures that
@@ -110,90 +166,185 @@ public class PlayScreen implements Screen {
     }
 
     /**
-     * Displays the tiles of the world on the given AsciiPanel, starting at the specified top-left coordinates. The
-     * method iterates through a rectangular region of tiles of size screenWidth by screenHeight, and for each tile,
-     * retrieves its glyph and color from the World object, and writes them to the corresponding cell on the
-     * AsciiPanel.
+     * Displays the tiles of the world on the given render target, starting at the specified top-left coordinates. When the
+     * viewport scrolled, every cell of the viewport is drawn into the frame buffer. Otherwise only the cells the world
+     * reports as changed, the cells the field of view reports as come into or gone out of view, and the rows that were
+     * covered by messages are drawn. The frame buffer then writes the cells that actually differ from what the terminal
+     * shows.
+     * <p>
+     * Only the cells the player sees show what is there now. Cells the player saw before show the tile they remember,
+     * dimmed and without creatures, all other cells stay empty.
      *
-     * @param terminal the AsciiPanel to display the tiles on.
+     * @param terminal the target to display the tiles on.
      * @param left     the x-coordinate of the left edge of the viewport, in world coordinates.
      * @param top      the y-coordinate of the top edge of the viewport, in world coordinates.
      */
-    private void displayTiles(AsciiPanel terminal, int left, int top) {
-        for (int y = 0; y < screenHeight; y++) {
-            int wy = y + top;
-            for (int x = 0; x < screenWidth; x++) {
-                int wx = x + left;
-                terminal.write(world.getGlyph(wx, wy), x, y, world.getColor(wx, wy));
+    private void displayTiles(RenderTarget terminal, int left, int top) {
+        LongConsumer drawIfShown = cell -> {
+            int x = (int) (cell % world.getWidth()) - left;
+            int y = (int) (cell / world.getWidth()) - top;
+            if (x >= 0 && x < screenWidth && y >= 0 && y < screenHeight) {
+                drawCell(x + left, y + top, x, y);
+            }
+        };
+        boolean listed = world.drainDirtyCells(drawIfShown);
+        // Drained even when everything is drawn below, so that the next frame only gets the changes after this one
+        fieldOfView.drainChangedCells(drawIfShown);
+
+        if (!listed || left != lastLeft || top != lastTop) {
+            frame.invalidate();
+            for (int y = 0; y < screenHeight; y++) {
+                drawRow(left, top, y);
+            }
+            lastLeft = left;
+            lastTop = top;
+        } else {
+            // Restore the rows the messages of the last frame were written over
+            for (int y = screenHeight - messageRowsShown; y < screenHeight; y++) {
+                drawRow(left, top, y);
             }
         }
-        // draw creatures after the tiles
-        for (Creature creature : world.getCreatures()) {
-            if (creature.getX() >= left && creature.getX() < left + screenWidth && creature.getY() >= top && creature.getY() < top + screenHeight) {
-                terminal.write(creature.getGlyph(), creature.getX() - left, creature.getY() - top, creature.getColor());
+        frame.flush(terminal);
+    }
+
+    private void drawRow(int left, int top, int y) {
+        // Copy the whole row of the viewport, creatures included, instead of looking up every cell on its own
+        world.copyRegion(left, y + top, screenWidth, 1, tileRow, glyphRow, colorRow);
+        for (int x = 0; x < screenWidth; x++) {
+            if (fieldOfView.isVisible(x + left, y + top)) {
+                frame.set(glyphRow[x], x, y, colorRow[x]);
+            } else {
+                drawRemembered(x + left, y + top, x, y);
             }
         }
     }
 
+    private void drawCell(int wx, int wy, int x, int y) {
+        if (fieldOfView.isVisible(wx, wy)) {
+            world.copyRegion(wx, wy, 1, 1, tileRow, glyphRow, colorRow);
+            frame.set(glyphRow[0], x, y, colorRow[0]);
+        } else {
+            drawRemembered(wx, wy, x, y);
+        }
+    }
+
+    private void drawRemembered(int wx, int wy, int x, int y) {
+        Tile tile = fieldOfView.getRememberedTile(wx, wy);
+        if (tile != null) {
+            frame.set(tile.getGlyph(), x, y, REMEMBERED_COLOR);
+        } else {
+            frame.set(' ', x, y, UNSEEN_COLOR);
+        }
+    }
+
     /**
-     * Displays the messages in the specified list on the specified terminal. The messages are centered vertically in
-     * the terminal, starting at the bottom of the screen and working their way up. After the messages are displayed,
-     * the list is cleared.
+     * Displays the messages in the specified log on the specified terminal. The messages are centered vertically in
+     * the terminal, starting at the bottom of the screen and working their way up. The text of a message is only
+     * formatted here. After the messages are displayed, the log is cleared.
      *
-     * @param terminal the AsciiPanel on which to display the messages
-     * @param messages the list of messages to display
+     * @param terminal the target on which to display the messages
+     * @param messages the log of messages to display
      */
-    public void displayMessages(AsciiPanel terminal, List<String> messages) {
+    public void displayMessages(RenderTarget terminal, MessageLog messages) {
         int top = screenHeight - messages.size();
         for (int i = 0; i < messages.size(); i++) {
-            terminal.writeCenter(messages.get(i), top + i);
+            terminal.writeCenter(messages.getText(i), top + i);
+            // The message hides the tiles, the frame buffer no longer knows what this row shows
+            if (top + i >= 0) {
+                frame.invalidateRow(top + i);
+            }
         }
+        messageRowsShown = Math.min(messages.size(), screenHeight);
         messages.clear();
     }
 
     @Override
     public Screen respondToUserInput(KeyEvent key) {
-
+        Command command;
         switch (key.getKeyCode()) {
             // if user presses ESCAPE: switch to loser screen
             case KeyEvent.VK_ESCAPE:
+                closeJournal();
                 return new LooseScreen();
             // if user presses ENTER: switch to winner screen
             case KeyEvent.VK_ENTER:
+                closeJournal();
                 return new WinScreen();
             case KeyEvent.VK_LEFT:
             case KeyEvent.VK_H:
-                player.moveBy(-1, 0);
+                command = Command.WEST;
                 break;
             case KeyEvent.VK_RIGHT:
             case KeyEvent.VK_L:
-                player.moveBy(1, 0);
+                command = Command.EAST;
                 break;
             case KeyEvent.VK_UP:
             case KeyEvent.VK_K:
-                player.moveBy(0, -1);
+                command = Command.NORTH;
                 break;
             case KeyEvent.VK_DOWN:
             case KeyEvent.VK_J:
-                player.moveBy(0, 1);
+                command = Command.SOUTH;
                 break;
             case KeyEvent.VK_Y:
-                player.moveBy(-1, -1);
+                command = Command.NORTH_WEST;
                 break;
             case KeyEvent.VK_U:
-                player.moveBy(1, -1);
+                command = Command.NORTH_EAST;
                 break;
             case KeyEvent.VK_B:
-                player.moveBy(-1, 1);
+                command = Command.SOUTH_WEST;
                 break;
             case KeyEvent.VK_N:
-                player.moveBy(1, 1);
+                command = Command.SOUTH_EAST;
                 break;
+            // pressing shift on its own, before the stairs, does not take a turn
+            case KeyEvent.VK_SHIFT:
+                return this;
+            // saving does not take a turn
+            case KeyEvent.VK_S:
+                save();
+                return this;
+            default:
+                // The stairs are typed with shift on most layouts, so they are told apart by their character
+                if (key.getKeyChar() == '>') {
+                    command = Command.DESCEND;
+                } else if (key.getKeyChar() == '<') {
+                    command = Command.ASCEND;
+                } else {
+                    command = Command.WAIT;
+                }
         }
 
-        // after handling player input, update all creatures in the world
-        world.updateCreatures();
+        // let the player act, then update all creatures in the world
+        simulation.advance(1, command);
+        if (journal != null) {
+            journal.record(command, simulation);
+        }
         return this;
     }
 
+    /**
+     * Saves the game to {@link Snapshot#DEFAULT_FILE} and tells the player in the message log whether it worked. A dead
+     * player is not saved, as such a game could not be loaded again.
+     */
+    private void save() {
+        if (!simulation.getPlayer().isInWorld()) {
+            messages.add("The game can not be saved after you died.");
+            return;
+        }
+        try {
+            Snapshot.save(simulation, Snapshot.DEFAULT_FILE);
+            messages.add("Game saved to " + Snapshot.DEFAULT_FILE + ".");
+        } catch (UncheckedIOException e) {
+            messages.add("The game could not be saved: " + e.getCause().getMessage());
+        }
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
 }
@@ -0,0 +1,58 @@
+package net.zn80.trystansroguelike.screens;
+
+/**
+ * Where screens draw themselves: a grid of character cells, each holding a glyph and the color of the glyph. Colors are
+ * packed ARGB ints as returned by {@link java.awt.Color#getRGB()}, so that a target does not need AWT to keep them.
+ * <p>
+ * The game draws into an {@link AsciiPanelTarget}, tests, benchmarks and headless servers can draw into a
+ * {@link MemoryRenderTarget} instead.
+ */
+public interface RenderTarget {
+
+    /**
+     * The color of text written without a color, the light grey AsciiPanel uses by default.
+     */
+    int DEFAULT_FOREGROUND = 0xffc0c0c0;
+
+    int getWidthInCharacters();
+
+    int getHeightInCharacters();
+
+    /**
+     * Writes a glyph into a cell. Cells outside the target are ignored.
+     *
+     * @param glyph the glyph
+     * @param x     the x-coordinate of the cell
+     * @param y     the y-coordinate of the cell
+     * @param color the color of the glyph, as ARGB
+     */
+    void write(char glyph, int x, int y, int color);
+
+    /**
+     * Writes a text into a row, starting at the given cell, in the default color.
+     *
+     * @param text the text
+     * @param x    the x-coordinate of the first character
+     * @param y    the row
+     */
+    default void write(String text, int x, int y) {
+        for (int i = 0; i < text.length(); i++) {
+            write(text.charAt(i), x + i, y, DEFAULT_FOREGROUND);
+        }
+    }
+
+    /**
+     * Writes a text into a row, centered horizontally, in the default color.
+     *
+     * @param text the text
+     * @param y    the row
+     */
+    default void writeCenter(String text, int y) {
+        write(text, (getWidthInCharacters() - text.length()) / 2, y);
+    }
+
+    /**
+     * Clears every cell.
+     */
+    void clear();
+}
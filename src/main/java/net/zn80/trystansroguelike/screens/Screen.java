@@ -1,15 +1,23 @@
 /**
- * The displayOutput method takes an AsciiPanel to display itself on and the respondToUserInput takes the KeyEvent and
+ * The displayOutput method takes a RenderTarget to display itself on and the respondToUserInput takes the KeyEvent and
  * can return the new screen. This way pressing a key can result in looking at a different screen.
  */
 package net.zn80.trystansroguelike.screens;
 
-import net.trystan.asciipanel.AsciiPanel;
-
 import java.awt.event.KeyEvent;
 
 public interface Screen {
-    void displayOutput(AsciiPanel terminal);
+    void displayOutput(RenderTarget terminal);
 
     Screen respondToUserInput(KeyEvent key);
+
+    /**
+     * Returns whether the screen changes on its own, for example to show progress, and should be displayed again from
+     * time to time even if no key is pressed.
+     *
+     * @return true if the screen should be repainted regularly
+     */
+    default boolean needsRepaint() {
+        return false;
+    }
 }
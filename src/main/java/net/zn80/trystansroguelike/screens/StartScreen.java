@@ -1,20 +1,69 @@
 package net.zn80.trystansroguelike.screens;
 
-import net.trystan.asciipanel.AsciiPanel;
+import net.zn80.trystansroguelike.Journal;
+import net.zn80.trystansroguelike.Simulation;
+import net.zn80.trystansroguelike.Snapshot;
+import net.zn80.trystansroguelike.WorldPregenerator;
 
 import java.awt.event.KeyEvent;
+import java.nio.file.Path;
 
 public class StartScreen implements Screen {
+    private final Path snapshot;
+    private final WorldPregenerator worlds;
+
+    /**
+     * Creates a start screen that starts a game in a new world. The world is generated in the background while the
+     * screen is shown, see {@link WorldPregenerator#getDefault()}.
+     */
+    public StartScreen() {
+        this(null);
+    }
+
+    /**
+     * Creates a start screen that loads the given snapshot when the game starts, instead of generating a world.
+     *
+     * @param snapshot the snapshot to load, see {@link Snapshot}, or null to generate a world
+     */
+    public StartScreen(Path snapshot) {
+        this.snapshot = snapshot;
+        this.worlds = WorldPregenerator.getDefault();
+        if (snapshot == null) {
+            worlds.start();
+        }
+    }
+
     @Override
-    public void displayOutput(AsciiPanel terminal) {
+    public void displayOutput(RenderTarget terminal) {
         terminal.write("rl tutorial", 1, 1);
         terminal.writeCenter("Startscreen", terminal.getHeightInCharacters() / 2);
-        terminal.writeCenter("--- press [enter] to continue ---", terminal.getHeightInCharacters() - 2);
+        if (isReady()) {
+            terminal.writeCenter("--- press [enter] to continue ---", terminal.getHeightInCharacters() - 2);
+        } else {
+            String progress = String.format("--- generating world %3d%% ---", (int) (worlds.getProgress() * 100));
+            terminal.writeCenter(progress, terminal.getHeightInCharacters() - 2);
+        }
+    }
+
+    @Override
+    public boolean needsRepaint() {
+        return !isReady();
+    }
+
+    private boolean isReady() {
+        return snapshot != null || worlds.isReady();
     }
 
     @Override
     public Screen respondToUserInput(KeyEvent key) {
-        // when the user presses enter, return a new PlayScreen, aka switch screen
-        return key.getKeyCode() == KeyEvent.VK_ENTER ? new PlayScreen() : this;
+        // when the user presses enter and the world is ready, return a new PlayScreen, aka switch screen
+        if (key.getKeyCode() != KeyEvent.VK_ENTER || !isReady()) {
+            return this;
+        }
+        if (snapshot != null) {
+            return new PlayScreen(Snapshot.load(snapshot));
+        }
+        Simulation simulation = worlds.take().join();
+        return new PlayScreen(simulation, Journal.forNewGame(simulation));
     }
 }
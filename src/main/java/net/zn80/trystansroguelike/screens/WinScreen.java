@@ -4,13 +4,15 @@
  */
 package net.zn80.trystansroguelike.screens;
 
-import net.trystan.asciipanel.AsciiPanel;
+import net.zn80.trystansroguelike.Journal;
+import net.zn80.trystansroguelike.Simulation;
+import net.zn80.trystansroguelike.WorldPregenerator;
 
 import java.awt.event.KeyEvent;
 
 public class WinScreen implements Screen {
     @Override
-    public void displayOutput(AsciiPanel terminal) {
+    public void displayOutput(RenderTarget terminal) {
         terminal.write("You won!", 1, 1);
         terminal.writeCenter("Winner Screen", terminal.getHeightInCharacters() / 2);
         terminal.writeCenter("--- press [enter] to restart ---", terminal.getHeightInCharacters() - 2);
@@ -18,7 +20,12 @@ public class WinScreen implements Screen {
 
     @Override
     public Screen respondToUserInput(KeyEvent key) {
-        // when the user presses enter, return a new PlayScreen, aka switch screen
-        return key.getKeyCode() == KeyEvent.VK_ENTER ? new PlayScreen() : this;
+        // when the user presses enter, return a new PlayScreen, aka switch screen; the world was generated in the
+        // background while the last game was played
+        if (key.getKeyCode() != KeyEvent.VK_ENTER) {
+            return this;
+        }
+        Simulation simulation = WorldPregenerator.getDefault().take().join();
+        return new PlayScreen(simulation, Journal.forNewGame(simulation));
     }
 }
@@ -0,0 +1,54 @@
+package net.zn80.trystansroguelike;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests which keys the game loop drops when it fell behind, see {@link GameLoop#dropRepeats(List)}.
+ */
+class GameLoopTest {
+
+    private final JPanel source = new JPanel();
+
+    @Test
+    void keepsKeysPressedAgainAfterTheyWereLetGo() {
+        List<GameLoop.QueuedKey> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batch.add(key(KeyEvent.KEY_PRESSED, KeyEvent.VK_RIGHT));
+            batch.add(key(KeyEvent.KEY_RELEASED, KeyEvent.VK_RIGHT));
+        }
+
+        assertEquals(0, GameLoop.dropRepeats(batch));
+        assertEquals(3, batch.size());
+        for (GameLoop.QueuedKey queued : batch) {
+            assertEquals(KeyEvent.KEY_PRESSED, queued.key.getID());
+            assertEquals(KeyEvent.VK_RIGHT, queued.key.getKeyCode());
+        }
+    }
+
+    @Test
+    void dropsTheRepeatsOfAKeyHeldDown() {
+        List<GameLoop.QueuedKey> batch = new ArrayList<>();
+        batch.add(key(KeyEvent.KEY_PRESSED, KeyEvent.VK_RIGHT));
+        batch.add(key(KeyEvent.KEY_PRESSED, KeyEvent.VK_RIGHT));
+        batch.add(key(KeyEvent.KEY_PRESSED, KeyEvent.VK_RIGHT));
+        batch.add(key(KeyEvent.KEY_RELEASED, KeyEvent.VK_RIGHT));
+        batch.add(key(KeyEvent.KEY_PRESSED, KeyEvent.VK_LEFT));
+
+        assertEquals(2, GameLoop.dropRepeats(batch));
+        assertEquals(2, batch.size());
+        assertEquals(KeyEvent.VK_RIGHT, batch.get(0).key.getKeyCode());
+        assertEquals(KeyEvent.VK_LEFT, batch.get(1).key.getKeyCode());
+    }
+
+    private GameLoop.QueuedKey key(int id, int keyCode) {
+        KeyEvent event = new KeyEvent(source, id, System.currentTimeMillis(), 0, keyCode, KeyEvent.CHAR_UNDEFINED);
+        return new GameLoop.QueuedKey(event, System.nanoTime());
+    }
+}